@@ -0,0 +1,32 @@
+package it.crystalnest.server_sided_portals.benchmark;
+
+import it.crystalnest.server_sided_portals.portal.CustomPortalBlockState;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectArrayMap;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * Copy of a registered {@link BlockState} carrying its global id, as every block state does in game once the mod mixins are applied.<br>
+ * Benchmarks run without mixins, so the states they read are replaced with these to measure the same cached id lookups the game does.
+ */
+public final class CachedIdBlockState extends BlockState implements CustomPortalBlockState {
+  /**
+   * Global id of the copied block state.
+   */
+  private final int id;
+
+  /**
+   * @param state registered block state to copy.
+   */
+  public CachedIdBlockState(BlockState state) {
+    // The properties codec is only used to serialize the state, which benchmarks never do.
+    super(state.getBlock(), new Reference2ObjectArrayMap<>(state.getValues()), null);
+    this.id = Block.getId(state);
+    initCache();
+  }
+
+  @Override
+  public int portalStateId() {
+    return id;
+  }
+}
@@ -0,0 +1,223 @@
+package it.crystalnest.server_sided_portals.benchmark;
+
+import it.crystalnest.server_sided_portals.portal.CustomPortalMatcher;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRegistry;
+import it.crystalnest.server_sided_portals.portal.CustomPortalSpec;
+import net.minecraft.SharedConstants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.core.Holder;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.tags.TagKey;
+import net.minecraft.tags.TagLoader;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.portal.PortalShape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks Custom Portal detection against Vanilla {@link PortalShape#findAnyShape}, and the fire placement and item use paths built on top of it.<br>
+ * Mixins are not applied, so the Vanilla benchmark measures the unmodified scan and the others call the mod code directly, the same way its mixins and
+ * handlers do.<br>
+ * Blocks are read from a {@link SyntheticLevel} holding {@link CachedIdBlockState}s, so frame membership tests use the id cached on each state as in game.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PortalDetectionBenchmark {
+  /**
+   * Inner portal size, as width x height.
+   */
+  @Param({"2x3", "21x21"})
+  public String size;
+
+  /**
+   * Amount of Custom Dimensions with a Custom Portal.
+   */
+  @Param({"1", "8", "64"})
+  public int dimensions;
+
+  /**
+   * Amount of blocks in each Custom Portal Frame tag.
+   */
+  @Param({"1", "16", "128"})
+  public int frameTagSize;
+
+  /**
+   * Whether the frame is complete, otherwise its last top block is missing and the scan fails only at the very end.
+   */
+  @Param({"true", "false"})
+  public boolean hit;
+
+  /**
+   * Custom Portal registry for the Custom Dimensions.
+   */
+  private CustomPortalRegistry registry;
+
+  /**
+   * Dimension with a Custom Portal, framed for the last Custom Dimension.
+   */
+  private SyntheticLevel customLevel;
+
+  /**
+   * Dimension with the same portal, framed with obsidian.
+   */
+  private SyntheticLevel vanillaLevel;
+
+  /**
+   * Position inside the portal where scans start.
+   */
+  private BlockPos start;
+
+  /**
+   * Position where fire is placed, at the bottom of the portal.
+   */
+  private BlockPos ignition;
+
+  /**
+   * Custom Portal Igniter item of the last Custom Dimension.
+   */
+  private ItemStack igniter;
+
+  @Setup
+  public void setup() {
+    SharedConstants.tryDetectVersion();
+    Bootstrap.bootStrap();
+    int width = Integer.parseInt(size.substring(0, size.indexOf('x')));
+    int height = Integer.parseInt(size.substring(size.indexOf('x') + 1));
+    // Solid blocks to fill the frame tags with, stone is left out to break the frame in the miss case.
+    List<Block> pool = BuiltInRegistries.BLOCK.stream().filter(block -> block != Blocks.OBSIDIAN && block != Blocks.STONE && !block.defaultBlockState().hasBlockEntity() && !CustomPortalMatcher.isEmpty(block.defaultBlockState())).toList();
+    List<Item> igniters = List.of(Items.FLINT_AND_STEEL, Items.FIRE_CHARGE, Items.BLAZE_ROD, Items.STICK);
+    List<ResourceKey<Level>> keys = new ArrayList<>();
+    Map<TagKey<Block>, List<Holder<Block>>> frameTags = new HashMap<>();
+    Map<TagKey<Item>, List<Holder<Item>>> igniterTags = new HashMap<>();
+    for (int d = 0; d < dimensions; d++) {
+      ResourceKey<Level> key = ResourceKey.create(Registries.DIMENSION, ResourceLocation.fromNamespaceAndPath("benchmark", "dimension_" + d));
+      keys.add(key);
+      List<Holder<Block>> frame = new ArrayList<>();
+      for (int k = 0; k < frameTagSize; k++) {
+        frame.add(pool.get((d * frameTagSize + k) % pool.size()).builtInRegistryHolder());
+      }
+      frameTags.put(CustomPortalSpec.frameTag(key), frame);
+      igniterTags.put(CustomPortalSpec.igniterTag(key), List.of(igniters.get(d % igniters.size()).builtInRegistryHolder()));
+    }
+    BuiltInRegistries.BLOCK.prepareTagReload(new TagLoader.LoadResult<>(Registries.BLOCK, frameTags)).apply();
+    BuiltInRegistries.ITEM.prepareTagReload(new TagLoader.LoadResult<>(Registries.ITEM, igniterTags)).apply();
+    registry = CustomPortalRegistry.build(keys);
+    // The last Custom Dimension is the worst case for a per-dimension scan.
+    Block frame = frameTags.get(CustomPortalSpec.frameTag(keys.get(dimensions - 1))).get(0).value();
+    customLevel = portal(width, height, frame.defaultBlockState());
+    vanillaLevel = portal(width, height, Blocks.OBSIDIAN.defaultBlockState());
+    start = new BlockPos(-(width - 1) / 2, 64 + height / 2, 0);
+    ignition = new BlockPos(0, 64, 0);
+    igniter = new ItemStack(igniters.get((dimensions - 1) % igniters.size()));
+  }
+
+  /**
+   * Builds a dimension with a single portal frame along the {@link Direction.Axis#X X axis}.<br>
+   * The bottom left corner of the portal interior is at {@code 0, 64, 0}.
+   *
+   * @param width inner portal width.
+   * @param height inner portal height.
+   * @param frame frame block.
+   * @return dimension with the portal frame.
+   */
+  private SyntheticLevel portal(int width, int height, BlockState frame) {
+    SyntheticLevel level = new SyntheticLevel();
+    for (int x = -width; x <= 1; x++) {
+      level.set(x, 63, 0, frame);
+      level.set(x, 64 + height, 0, frame);
+    }
+    for (int y = 64; y < 64 + height; y++) {
+      level.set(1, y, 0, frame);
+      level.set(-width, y, 0, frame);
+    }
+    if (!hit) {
+      level.set(-(width - 1), 64 + height, 0, Blocks.STONE.defaultBlockState());
+    }
+    return level;
+  }
+
+  /**
+   * Finds the shape of a portal with the unmodified Vanilla scan.
+   *
+   * @return {@link PortalShape}.
+   */
+  @Benchmark
+  public PortalShape vanillaFindAnyShape() {
+    return PortalShape.findAnyShape(vanillaLevel, start, Direction.Axis.X);
+  }
+
+  /**
+   * Finds the shape of a Custom Portal against all Custom Dimensions, as {@code PortalShapeMixin} does in the Overworld.
+   *
+   * @return {@link PortalShape}.
+   */
+  @Benchmark
+  public PortalShape customFindAnyShape() {
+    return CustomPortalMatcher.match(customLevel, registry, start, Direction.Axis.X, registry.allMask());
+  }
+
+  /**
+   * Fire placed at the bottom of a Custom Portal, as {@code BaseFireBlockMixin} and {@link PortalShape#findEmptyPortalShape} do.
+   *
+   * @return whether the portal would light up.
+   */
+  @Benchmark
+  public boolean firePlacement() {
+    if (!registry.isFrame(customLevel.getBlockState(ignition.below()))) {
+      return false;
+    }
+    return findEmptyPortalShape(ignition);
+  }
+
+  /**
+   * Igniter used on the bottom frame of a Custom Portal, as {@code ItemUseHandler} does.
+   *
+   * @return whether the portal would light up.
+   */
+  @Benchmark
+  public boolean itemUse() {
+    long igniters = registry.igniterMask(igniter);
+    if (igniters == 0 || (registry.frameMask(customLevel.getBlockState(ignition.below())) & igniters) == 0) {
+      return false;
+    }
+    return findEmptyPortalShape(ignition);
+  }
+
+  /**
+   * Same as {@link PortalShape#findEmptyPortalShape}, trying both axes.
+   *
+   * @param pos initial position.
+   * @return whether a valid empty portal was found.
+   */
+  private boolean findEmptyPortalShape(BlockPos pos) {
+    PortalShape shape = CustomPortalMatcher.match(customLevel, registry, pos, Direction.Axis.X, registry.allMask());
+    if (!shape.isValid()) {
+      shape = CustomPortalMatcher.match(customLevel, registry, pos, Direction.Axis.Z, registry.allMask());
+    }
+    return shape.isValid();
+  }
+}
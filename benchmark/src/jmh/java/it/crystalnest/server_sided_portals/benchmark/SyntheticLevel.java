@@ -0,0 +1,64 @@
+package it.crystalnest.server_sided_portals.benchmark;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.material.FluidState;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * In-memory {@link BlockGetter} made of air, except for the blocks explicitly set.<br>
+ * Blocks are stored as {@link CachedIdBlockState}s, so that they carry their global id as in game.
+ */
+public final class SyntheticLevel implements BlockGetter {
+  /**
+   * Blocks that are not air, by {@link BlockPos#asLong() position}.
+   */
+  private final Long2ObjectOpenHashMap<BlockState> blocks = new Long2ObjectOpenHashMap<>();
+
+  public SyntheticLevel() {
+    blocks.defaultReturnValue(new CachedIdBlockState(Blocks.AIR.defaultBlockState()));
+  }
+
+  /**
+   * Sets the block at the given position.<br>
+   * The block state is stored as a {@link CachedIdBlockState}.
+   *
+   * @param x X coordinate.
+   * @param y Y coordinate.
+   * @param z Z coordinate.
+   * @param state block state.
+   */
+  public void set(int x, int y, int z, BlockState state) {
+    blocks.put(BlockPos.asLong(x, y, z), new CachedIdBlockState(state));
+  }
+
+  @Nullable
+  @Override
+  public BlockEntity getBlockEntity(BlockPos pos) {
+    return null;
+  }
+
+  @Override
+  public BlockState getBlockState(BlockPos pos) {
+    return blocks.get(pos.asLong());
+  }
+
+  @Override
+  public FluidState getFluidState(BlockPos pos) {
+    return getBlockState(pos).getFluidState();
+  }
+
+  @Override
+  public int getHeight() {
+    return 384;
+  }
+
+  @Override
+  public int getMinY() {
+    return -64;
+  }
+}
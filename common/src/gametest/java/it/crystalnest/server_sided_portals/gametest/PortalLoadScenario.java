@@ -0,0 +1,209 @@
+package it.crystalnest.server_sided_portals.gametest;
+
+import it.crystalnest.server_sided_portals.Constants;
+import it.crystalnest.server_sided_portals.MixinToggle;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.EntitySpawnReason;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.entity.item.ItemEntity;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.portal.PortalShape;
+import net.minecraft.world.phys.Vec3;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Server load scenario for portal-heavy worlds, shared by the GameTests of each loader.<br>
+ * Builds a grid of Custom Portals for the Game Test dimensions and Nether Portals in the Overworld, then keeps pushing items, mobs and players through
+ * them while sampling the server tick times.<br>
+ * When the mod mixins are turned off with {@link MixinToggle}, every portal is a Nether Portal, giving a Vanilla baseline for the same load.<br>
+ * Sizes are read from system properties prefixed with {@value #PREFIX}, results are logged and appended to {@value #REPORT} in the server directory.
+ */
+public final class PortalLoadScenario {
+  /**
+   * Prefix of the system properties configuring the scenario.
+   */
+  public static final String PREFIX = Constants.MOD_ID + ".gametest.";
+
+  /**
+   * Name of the report file.
+   */
+  public static final String REPORT = "portal-load-report.txt";
+
+  /**
+   * GameTest timeout, large enough for any sensible amount of measured ticks.
+   */
+  public static final int TIMEOUT_TICKS = 20 * 60 * 60;
+
+  /**
+   * Amount of portals.
+   */
+  private static final int PORTALS = Integer.getInteger(PREFIX + "portals", 24);
+
+  /**
+   * Amount of items dropped into portals each tick.
+   */
+  private static final int ITEMS_PER_TICK = Integer.getInteger(PREFIX + "items_per_tick", 8);
+
+  /**
+   * Amount of mobs spawned into portals each second.
+   */
+  private static final int MOBS_PER_SECOND = Integer.getInteger(PREFIX + "mobs_per_second", 4);
+
+  /**
+   * Amount of players standing in portals.
+   */
+  private static final int PLAYERS = Integer.getInteger(PREFIX + "players", 4);
+
+  /**
+   * Ticks to wait before sampling, so that exit portals and their chunks are generated.
+   */
+  private static final int WARMUP_TICKS = Integer.getInteger(PREFIX + "warmup_ticks", 400);
+
+  /**
+   * Amount of sampled ticks.
+   */
+  private static final int MEASURED_TICKS = Integer.getInteger(PREFIX + "measured_ticks", 1200);
+
+  /**
+   * Frame blocks of the Game Test dimensions, must match the frame tags of the Game Test datapack.
+   */
+  private static final List<Block> CUSTOM_FRAMES = List.of(Blocks.GOLD_BLOCK, Blocks.EMERALD_BLOCK, Blocks.LAPIS_BLOCK);
+
+  /**
+   * Portals per row of the grid.
+   */
+  private static final int ROW = 8;
+
+  /**
+   * Distance between two portals of the grid.
+   */
+  private static final int SPACING = 8;
+
+  private PortalLoadScenario() {}
+
+  /**
+   * Runs the scenario.
+   *
+   * @param helper {@link GameTestHelper}.
+   */
+  public static void run(GameTestHelper helper) {
+    ServerLevel level = helper.getLevel();
+    MinecraftServer server = level.getServer();
+    List<BlockPos> portals = new ArrayList<>(PORTALS);
+    for (int i = 0; i < PORTALS; i++) {
+      BlockPos pos = helper.absolutePos(new BlockPos(SPACING + (i % ROW) * SPACING, 1, SPACING + (i / ROW) * SPACING));
+      // One in every (custom frames + 1) portals is a Nether Portal, the rest cycle through the Game Test dimensions.
+      int kind = i % (CUSTOM_FRAMES.size() + 1);
+      build(level, pos, MixinToggle.ENABLED && kind > 0 ? CUSTOM_FRAMES.get(kind - 1) : Blocks.OBSIDIAN);
+      if (PortalShape.findEmptyPortalShape(level, pos, Direction.Axis.X).map(shape -> {
+        shape.createPortalBlocks(level);
+        return true;
+      }).isEmpty()) {
+        helper.fail("Portal " + i + " at " + pos.toShortString() + " could not be lit");
+        return;
+      }
+      portals.add(pos);
+    }
+    for (int i = 0; i < PLAYERS; i++) {
+      ServerPlayer player = helper.makeMockServerPlayerInLevel();
+      Vec3 center = portals.get(i % portals.size()).getBottomCenter();
+      player.teleportTo(center.x, center.y, center.z);
+    }
+    LongArrayList samples = new LongArrayList(MEASURED_TICKS);
+    int[] tick = {0};
+    helper.onEachTick(() -> {
+      int current = tick[0]++;
+      for (int i = 0; i < ITEMS_PER_TICK; i++) {
+        Vec3 center = portals.get((current * ITEMS_PER_TICK + i) % portals.size()).getCenter();
+        ItemEntity item = new ItemEntity(level, center.x, center.y, center.z, new ItemStack(Items.COBBLESTONE));
+        item.setDeltaMovement(Vec3.ZERO);
+        level.addFreshEntity(item);
+      }
+      if (current % 20 == 0) {
+        for (int i = 0; i < MOBS_PER_SECOND; i++) {
+          EntityType.PIG.spawn(level, portals.get((current / 20 * MOBS_PER_SECOND + i) % portals.size()), EntitySpawnReason.MOB_SUMMONED);
+        }
+      }
+      if (current > WARMUP_TICKS && samples.size() < MEASURED_TICKS) {
+        // The slot of the current tick is written only once it ends, read the previous one.
+        long[] times = server.getTickTimesNanos();
+        samples.add(times[Math.floorMod(server.getTickCount() - 1, times.length)]);
+      }
+    });
+    helper.runAfterDelay(WARMUP_TICKS + MEASURED_TICKS + 2L, () -> {
+      report(server, samples);
+      helper.succeed();
+    });
+  }
+
+  /**
+   * Builds an empty portal frame along the {@link Direction.Axis#X X axis}, with a 2x3 interior whose bottom left corner is at the given position.
+   *
+   * @param level dimension.
+   * @param pos position of the bottom left corner of the interior.
+   * @param frame frame block.
+   */
+  private static void build(ServerLevel level, BlockPos pos, Block frame) {
+    for (int x = -2; x <= 1; x++) {
+      for (int y = -1; y <= 3; y++) {
+        boolean border = x == -2 || x == 1 || y == -1 || y == 3;
+        level.setBlockAndUpdate(pos.offset(x, y, 0), border ? frame.defaultBlockState() : Blocks.AIR.defaultBlockState());
+      }
+    }
+  }
+
+  /**
+   * Logs the tick time statistics and appends them to the report file.
+   *
+   * @param server Minecraft server.
+   * @param samples tick times, in nanoseconds.
+   */
+  private static void report(MinecraftServer server, LongArrayList samples) {
+    long[] sorted = samples.toLongArray();
+    Arrays.sort(sorted);
+    double mean = samples.longStream().average().orElse(0) / 1_000_000D;
+    double p50 = percentile(sorted, 0.50) / 1_000_000D;
+    double p99 = percentile(sorted, 0.99) / 1_000_000D;
+    double max = (sorted.length == 0 ? 0 : sorted[sorted.length - 1]) / 1_000_000D;
+    String line = String.format(
+      Locale.ROOT,
+      "mixins=%s portals=%d items_per_tick=%d mobs_per_second=%d players=%d ticks=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms",
+      MixinToggle.ENABLED, PORTALS, ITEMS_PER_TICK, MOBS_PER_SECOND, PLAYERS, sorted.length, mean, p50, p99, max
+    );
+    Constants.LOGGER.info("Portal load scenario: {}", line);
+    Path report = server.getServerDirectory().resolve(REPORT);
+    try {
+      Files.writeString(report, line + System.lineSeparator(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      Constants.LOGGER.error("Could not write the portal load report to {}", report, e);
+    }
+  }
+
+  /**
+   * Nearest-rank percentile of the given sorted samples.
+   *
+   * @param sorted sorted samples.
+   * @param percentile percentile, between 0 and 1.
+   * @return the percentile value, {@code 0} if there are no samples.
+   */
+  private static long percentile(long[] sorted, double percentile) {
+    return sorted.length == 0 ? 0 : sorted[Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1)];
+  }
+}
@@ -1,5 +1,6 @@
 package it.crystalnest.server_sided_portals;
 
+import it.crystalnest.server_sided_portals.config.ModConfig;
 import org.jetbrains.annotations.ApiStatus;
 
 /**
@@ -12,5 +13,7 @@ public final class CommonModLoader {
   /**
    * Initialize common operations across loaders.
    */
-  public static void init() {}
+  public static void init() {
+    ModConfig.load();
+  }
 }
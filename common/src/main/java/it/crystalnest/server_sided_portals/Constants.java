@@ -1,7 +1,5 @@
 package it.crystalnest.server_sided_portals;
 
-import net.minecraft.resources.ResourceKey;
-import net.minecraft.world.level.Level;
 import org.jetbrains.annotations.ApiStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,10 +19,5 @@ public final class Constants {
    */
   public static final Logger LOGGER = LoggerFactory.getLogger(MOD_ID);
 
-  /**
-   * {@link ThreadLocal} to keep track of a player's origin dimension when teleporting through a custom portal.
-   */
-  public static final ThreadLocal<ResourceKey<Level>> DIMENSION_ORIGIN_THREAD = ThreadLocal.withInitial(() -> Level.OVERWORLD);
-
   private Constants() {}
 }
@@ -0,0 +1,22 @@
+package it.crystalnest.server_sided_portals;
+
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Switch to turn off all the mod mixins, used to measure a Vanilla baseline with the same modpack.<br>
+ * Must not reference any Minecraft class, as it's read while mixins are being configured.
+ */
+@ApiStatus.Internal
+public final class MixinToggle {
+  /**
+   * System property that, when set to {@code false}, turns off all the mod mixins.
+   */
+  public static final String PROPERTY = "server_sided_portals.mixins";
+
+  /**
+   * Whether the mod mixins are applied.
+   */
+  public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty(PROPERTY));
+
+  private MixinToggle() {}
+}
@@ -1,11 +1,15 @@
 package it.crystalnest.server_sided_portals.api;
 
+import it.crystalnest.server_sided_portals.portal.CustomPortalDefinition;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRecord;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRecords;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRegistry;
+import it.crystalnest.server_sided_portals.portal.CustomPortalShape;
+import it.crystalnest.server_sided_portals.portal.CustomPortalSpec;
+import it.crystalnest.server_sided_portals.portal.PortalMetrics;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction.Axis;
-import net.minecraft.core.Holder;
 import net.minecraft.core.HolderSet;
-import net.minecraft.core.registries.BuiltInRegistries;
-import net.minecraft.core.registries.Registries;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerLevel;
@@ -26,13 +30,33 @@ import java.util.Optional;
  */
 public interface CustomPortalChecker {
   /**
-   * Gets the Custom Dimension related to the Custom Portal at the given position.
+   * Gets the Custom Dimension related to the Custom Portal at the given position.<br>
+   * Answers from the recorded Custom Portals when possible, otherwise scans the portal frame.
    *
    * @param level dimension.
    * @param pos position.
    * @return portal related dimension.
    */
   static ResourceKey<Level> getPortalDimension(Level level, BlockPos pos) {
+    if (level instanceof ServerLevel serverLevel && !CustomPortalRegistry.get(serverLevel.getServer()).isEmpty()) {
+      long start = PortalMetrics.start();
+      try {
+        CustomPortalRecords records = CustomPortalRecords.get(serverLevel);
+        CustomPortalRecord record = records.find(pos);
+        if (record != null && level.getBlockState(pos).is(Blocks.NETHER_PORTAL)) {
+          return record.dimension();
+        }
+        // Legacy fallback for portals lit before they were recorded.
+        PortalShape shape = PortalShape.findAnyShape(level, pos, level.getBlockState(pos).getOptionalValue(NetherPortalBlock.AXIS).orElse(Axis.X));
+        CustomPortalRecord scanned = ((CustomPortalShape) shape).toRecord(level.dimension());
+        if (scanned != null && shape.isComplete()) {
+          records.add(scanned);
+        }
+        return ((CustomPortalChecker) shape).dimension();
+      } finally {
+        PortalMetrics.stop(PortalMetrics.Metric.DIMENSION_LOOKUP, level.dimension(), start);
+      }
+    }
     return ((CustomPortalChecker) PortalShape.findAnyShape(level, pos, level.getBlockState(pos).getOptionalValue(NetherPortalBlock.AXIS).orElse(Axis.X))).dimension();
   }
 
@@ -78,7 +102,7 @@ public interface CustomPortalChecker {
    * @return the list of dimensions with a Custom Portal Frame.
    */
   static List<ResourceKey<Level>> getDimensionsWithCustomPortal(ServerLevel level) {
-    return level.getServer().levelKeys().stream().filter(CustomPortalChecker::hasCustomPortalFrame).toList();
+    return CustomPortalRegistry.get(level.getServer()).dimensions();
   }
 
   /**
@@ -88,7 +112,7 @@ public interface CustomPortalChecker {
    * @return whether the given dimension has a Custom Portal Frame.
    */
   static boolean hasCustomPortalFrame(Level level) {
-    return hasCustomPortalFrame(level.dimension());
+    return level instanceof ServerLevel serverLevel ? CustomPortalRegistry.get(serverLevel.getServer()).contains(level.dimension()) : hasCustomPortalFrame(level.dimension());
   }
 
   /**
@@ -98,17 +122,19 @@ public interface CustomPortalChecker {
    * @return whether the given dimension has a Custom Portal Frame.
    */
   static boolean hasCustomPortalFrame(ResourceKey<Level> dimension) {
-    return BuiltInRegistries.BLOCK.get(getCustomPortalFrameTag(dimension)).isPresent();
+    return CustomPortalRegistry.get().contains(dimension);
   }
 
   /**
-   * Returns the Block Tag for the Custom Portal Frame related to the given dimension.
+   * Returns the Block Tag for the Custom Portal Frame related to the given dimension.<br>
+   * That is the one of its Custom Portal definition, if any, otherwise the one following the naming convention.
    *
    * @param dimension dimension.
    * @return Block Tag for the Custom Portal Frame.
    */
   static TagKey<Block> getCustomPortalFrameTag(ResourceKey<Level> dimension) {
-    return TagKey.create(Registries.BLOCK, ResourceLocation.fromNamespaceAndPath(dimension.location().getNamespace(), dimension.location().getPath() + "_portal_frame"));
+    CustomPortalDefinition definition = CustomPortalRegistry.get().definition(dimension);
+    return definition == null ? CustomPortalSpec.frameTag(dimension) : definition.frameTag();
   }
 
   /**
@@ -118,7 +144,8 @@ public interface CustomPortalChecker {
    * @return a random Block from the Custom Portal Frame tag.
    */
   static Block getCustomPortalFrameBlock(Level level) {
-    return BuiltInRegistries.BLOCK.get(getCustomPortalFrameTag(level.dimension())).map(holders -> holders.getRandomElement(level.getRandom()).orElse(Holder.direct(Blocks.OBSIDIAN)).value()).orElse(Blocks.OBSIDIAN);
+    CustomPortalDefinition definition = CustomPortalRegistry.get().definition(level.dimension());
+    return definition == null ? Blocks.OBSIDIAN : definition.randomFrameBlock(level.getRandom());
   }
 
   /**
@@ -138,17 +165,20 @@ public interface CustomPortalChecker {
    * @return whether the given dimension has a Custom Portal Igniter item.
    */
   static boolean hasCustomPortalIgniter(ResourceKey<Level> dimension) {
-    return BuiltInRegistries.ITEM.get(getCustomPortalIgniterTag(dimension)).isPresent();
+    CustomPortalDefinition definition = CustomPortalRegistry.get().definition(dimension);
+    return definition != null && definition.hasIgniter();
   }
 
   /**
-   * Returns the Item Tag for the Custom Portal Igniter item related to the given dimension.
+   * Returns the Item Tag for the Custom Portal Igniter item related to the given dimension.<br>
+   * That is the one of its Custom Portal definition, if any, otherwise the one following the naming convention.
    *
    * @param dimension dimension.
    * @return Item Tag for the Custom Portal Igniter item.
    */
   static TagKey<Item> getCustomPortalIgniterTag(ResourceKey<Level> dimension) {
-    return TagKey.create(Registries.ITEM, ResourceLocation.fromNamespaceAndPath(dimension.location().getNamespace(), dimension.location().getPath() + "_portal_igniter"));
+    CustomPortalDefinition definition = CustomPortalRegistry.get().definition(dimension);
+    return definition == null ? CustomPortalSpec.igniterTag(dimension) : definition.igniterTag();
   }
 
   /**
@@ -158,7 +188,8 @@ public interface CustomPortalChecker {
    * @return a random Block from the Custom Portal Frame tag.
    */
   static Optional<HolderSet.Named<Item>> getCustomPortalIgniterItems(ResourceKey<Level> dimension) {
-    return BuiltInRegistries.ITEM.get(getCustomPortalIgniterTag(dimension));
+    CustomPortalDefinition definition = CustomPortalRegistry.get().definition(dimension);
+    return definition == null ? Optional.empty() : definition.igniterItems();
   }
 
   /**
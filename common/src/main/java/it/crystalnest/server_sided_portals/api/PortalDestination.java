@@ -0,0 +1,66 @@
+package it.crystalnest.server_sided_portals.api;
+
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.Level;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Consumer;
+
+/**
+ * Where an entity travelling through a Custom Portal goes, as decided by a {@link PortalDestinationResolver}.
+ */
+public sealed interface PortalDestination {
+  /**
+   * Travel to a dimension of this server.
+   *
+   * @param level destination dimension.
+   * @return {@link Local} destination.
+   */
+  static PortalDestination local(@Nullable ServerLevel level) {
+    return new Local(level);
+  }
+
+  /**
+   * Hand the entity off to another server hosting the destination dimension.
+   *
+   * @param dimension destination dimension.
+   * @param handoff transfers the entity to the other server.
+   * @return {@link Remote} destination.
+   */
+  static PortalDestination remote(ResourceKey<Level> dimension, Consumer<Entity> handoff) {
+    return new Remote(dimension, handoff);
+  }
+
+  /**
+   * Destination dimension.<br>
+   * Only a {@link Local} destination whose dimension is not loaded has none.
+   *
+   * @return destination dimension key, {@code null} if the destination dimension is not loaded.
+   */
+  @Nullable
+  ResourceKey<Level> dimension();
+
+  /**
+   * Travel to a dimension of this server, same as Vanilla.
+   *
+   * @param level destination dimension, {@code null} if it is not loaded, in which case the entity doesn't travel.
+   */
+  record Local(@Nullable ServerLevel level) implements PortalDestination {
+    @Nullable
+    @Override
+    public ResourceKey<Level> dimension() {
+      return level == null ? null : level.dimension();
+    }
+  }
+
+  /**
+   * Hand the entity off to another server hosting the destination dimension.<br>
+   * The entity doesn't travel on this server, the handoff is responsible for moving it, e.g. sending the player to another backend through a proxy.
+   *
+   * @param dimension destination dimension.
+   * @param handoff transfers the entity to the other server, called on the server thread when the entity goes through the portal.
+   */
+  record Remote(ResourceKey<Level> dimension, Consumer<Entity> handoff) implements PortalDestination {}
+}
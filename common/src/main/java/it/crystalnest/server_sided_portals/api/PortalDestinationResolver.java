@@ -0,0 +1,66 @@
+package it.crystalnest.server_sided_portals.api;
+
+import it.crystalnest.server_sided_portals.platform.Services;
+import it.crystalnest.server_sided_portals.portal.CustomPortalDefinition;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRecord;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRecords;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRegistry;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.Level;
+
+/**
+ * Decides where entities travelling through Custom Portals go.<br>
+ * Implementations are discovered through {@link Services}: list the implementation in
+ * {@code META-INF/services/it.crystalnest.server_sided_portals.api.PortalDestinationResolver}. When more implementations are available, the one with
+ * the highest {@link #priority()} is used.<br>
+ * By default, Custom Portals lead from their origins to their Custom Dimension and from their Custom Dimension back to the origin they were built for,
+ * all on this server.<br>
+ * Nether Portals are never resolved through this service.
+ */
+public interface PortalDestinationResolver {
+  /**
+   * Resolves the destination of an entity going through a Custom Portal.<br>
+   * Called on the server thread.
+   *
+   * @param level dimension of the portal.
+   * @param entity entity travelling.
+   * @param pos entrance position.
+   * @param portalDimension Custom Dimension the portal is for.
+   * @return {@link PortalDestination}.
+   */
+  PortalDestination resolve(ServerLevel level, Entity entity, BlockPos pos, ResourceKey<Level> portalDimension);
+
+  /**
+   * Priority of this implementation, the highest available one is used.
+   *
+   * @return priority.
+   */
+  default int priority() {
+    return 0;
+  }
+
+  /**
+   * Default destination of an entity going through a Custom Portal: the Custom Dimension from any of its origins, the origin the portal was built
+   * for from the Custom Dimension.<br>
+   * Portals lit in the Custom Dimension itself lead to the first origin of their Custom Portal definition.
+   *
+   * @param level dimension of the portal.
+   * @param pos entrance position.
+   * @param portalDimension Custom Dimension the portal is for.
+   * @return destination dimension key.
+   */
+  static ResourceKey<Level> defaultDestination(ServerLevel level, BlockPos pos, ResourceKey<Level> portalDimension) {
+    if (level.dimension() != portalDimension) {
+      return portalDimension;
+    }
+    CustomPortalRecord record = CustomPortalRecords.get(level).find(pos);
+    if (record != null && record.dimension() == portalDimension) {
+      return record.origin();
+    }
+    CustomPortalDefinition definition = CustomPortalRegistry.get(level.getServer()).definition(portalDimension);
+    return definition == null ? Level.OVERWORLD : definition.defaultOrigin();
+  }
+}
@@ -0,0 +1,20 @@
+package it.crystalnest.server_sided_portals.config;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Strategy used to find where to build the exit of a Custom Portal when there is none.
+ */
+public enum ExitPlacement {
+  /**
+   * Vanilla search, every block of every column around the exit position is checked.
+   */
+  @SerializedName("vanilla")
+  VANILLA,
+  /**
+   * Only the surface of each column is checked, found through the chunk heightmaps.<br>
+   * Columns whose surface is above the usable height are scanned downward skipping the chunk sections that hold no replaceable block.
+   */
+  @SerializedName("heightmap")
+  HEIGHTMAP
+}
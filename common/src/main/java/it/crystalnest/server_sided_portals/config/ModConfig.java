@@ -0,0 +1,144 @@
+package it.crystalnest.server_sided_portals.config;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import it.crystalnest.server_sided_portals.Constants;
+import it.crystalnest.server_sided_portals.platform.Services;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Server configuration, read from {@value #FILE} in the configuration directory.<br>
+ * The file is created with the default values if missing, and rewritten on each load so that new options show up.<br>
+ * Loaded when the mod initializes and reloaded along with datapacks.
+ */
+public final class ModConfig {
+  /**
+   * Configuration file name.
+   */
+  public static final String FILE = Constants.MOD_ID + ".json";
+
+  /**
+   * {@link Gson} instance to read and write the configuration.
+   */
+  private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+  /**
+   * Current configuration.
+   */
+  private static volatile ModConfig current = new ModConfig();
+
+  /**
+   * Whether lighting a Custom Portal loads the destination chunks in the background and builds or locates the exit portal ahead of the first travel.
+   */
+  private boolean pregenerateExits = false;
+
+  /**
+   * Exit portal placement strategy of each dimension, by dimension id.<br>
+   * Dimensions not listed use {@link ExitPlacement#VANILLA}.
+   */
+  private Map<String, ExitPlacement> exitPlacement = new HashMap<>();
+
+  /**
+   * Microseconds each dimension can spend on portal ignition attempts per tick, attempts over the budget wait for the next ticks.
+   */
+  private int ignitionBudgetMicros = 2000;
+
+  /**
+   * Maximum amount of ignition attempts of each dimension waiting for the next ticks, further attempts are dropped.
+   */
+  private int ignitionQueueSize = 64;
+
+  /**
+   * Maximum amount of Custom Portal Igniter uses per second of each player, {@code 0} for no limit.
+   */
+  private int ignitionsPerPlayerPerSecond = 5;
+
+  /**
+   * Returns the current configuration.
+   *
+   * @return current {@link ModConfig}.
+   */
+  public static ModConfig get() {
+    return current;
+  }
+
+  /**
+   * Loads the configuration from file, falling back to the defaults if it can't be read.
+   */
+  public static void load() {
+    Path path = Services.PLATFORM.getConfigDir().resolve(FILE);
+    ModConfig config = null;
+    if (Files.exists(path)) {
+      try {
+        config = GSON.fromJson(Files.readString(path), ModConfig.class);
+      } catch (IOException | JsonParseException e) {
+        Constants.LOGGER.error("Could not read {}, using the default configuration", path, e);
+      }
+    }
+    if (config == null) {
+      config = new ModConfig();
+    }
+    try {
+      Files.createDirectories(path.getParent());
+      Files.writeString(path, GSON.toJson(config));
+    } catch (IOException e) {
+      Constants.LOGGER.error("Could not write {}", path, e);
+    }
+    current = config;
+  }
+
+  /**
+   * Whether lighting a Custom Portal loads the destination chunks in the background and builds or locates the exit portal ahead of the first travel.
+   *
+   * @return whether to pregenerate exit portals.
+   */
+  public boolean pregenerateExits() {
+    return pregenerateExits;
+  }
+
+  /**
+   * Exit portal placement strategy of the given dimension.
+   *
+   * @param dimension dimension the exit portal is built in.
+   * @return {@link ExitPlacement}.
+   */
+  public ExitPlacement exitPlacement(ResourceKey<Level> dimension) {
+    ExitPlacement placement = exitPlacement == null ? null : exitPlacement.get(dimension.location().toString());
+    return placement == null ? ExitPlacement.VANILLA : placement;
+  }
+
+  /**
+   * Nanoseconds each dimension can spend on portal ignition attempts per tick.
+   *
+   * @return ignition budget in nanoseconds.
+   */
+  public long ignitionBudgetNanos() {
+    return Math.max(0, ignitionBudgetMicros) * 1_000L;
+  }
+
+  /**
+   * Maximum amount of ignition attempts of each dimension waiting for the next ticks.
+   *
+   * @return ignition queue size.
+   */
+  public int ignitionQueueSize() {
+    return Math.max(0, ignitionQueueSize);
+  }
+
+  /**
+   * Maximum amount of Custom Portal Igniter uses per second of each player, {@code 0} for no limit.
+   *
+   * @return player ignition rate.
+   */
+  public int ignitionsPerPlayerPerSecond() {
+    return Math.max(0, ignitionsPerPlayerPerSecond);
+  }
+}
@@ -0,0 +1,4 @@
+@ApiStatus.Internal
+package it.crystalnest.server_sided_portals.config;
+
+import org.jetbrains.annotations.ApiStatus;
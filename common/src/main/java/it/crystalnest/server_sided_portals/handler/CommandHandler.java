@@ -0,0 +1,100 @@
+package it.crystalnest.server_sided_portals.handler;
+
+import com.mojang.brigadier.CommandDispatcher;
+import it.crystalnest.server_sided_portals.portal.PortalMetrics;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.network.chat.Component;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Handler for command registration events.
+ */
+public abstract class CommandHandler {
+  /**
+   * Handles commands being registered.<br>
+   * Registers the {@code /portals} operator command.
+   *
+   * @param dispatcher {@link CommandDispatcher}.
+   */
+  protected void onRegisterCommands(CommandDispatcher<CommandSourceStack> dispatcher) {
+    dispatcher.register(
+      Commands.literal("portals")
+        .requires(source -> source.hasPermission(Commands.LEVEL_GAMEMASTERS))
+        .then(
+          Commands.literal("stats")
+            .executes(context -> printStats(context.getSource()))
+            .then(Commands.literal("enable").executes(context -> setRecording(context.getSource(), true)))
+            .then(Commands.literal("disable").executes(context -> setRecording(context.getSource(), false)))
+            .then(Commands.literal("reset").executes(context -> resetStats(context.getSource())))
+        )
+    );
+  }
+
+  /**
+   * Prints the recorded {@link PortalMetrics}, one line per metric and dimension.
+   *
+   * @param source {@link CommandSourceStack}.
+   * @return amount of printed lines.
+   */
+  private static int printStats(CommandSourceStack source) {
+    double elapsed = PortalMetrics.elapsedSeconds();
+    List<PortalMetrics.Sample> samples = PortalMetrics.snapshot();
+    source.sendSuccess(() -> Component.literal(String.format(Locale.ROOT, "Portal metrics over %.1fs, recording is %s.", elapsed, PortalMetrics.isEnabled() ? "on" : "off")), false);
+    if (samples.isEmpty()) {
+      source.sendSuccess(() -> Component.literal(PortalMetrics.isEnabled() ? "Nothing recorded yet." : "Turn recording on with /portals stats enable."), false);
+    }
+    for (PortalMetrics.Sample sample : samples) {
+      String line = String.format(Locale.ROOT, "%s [%s]: %d (%.2f/s)", sample.metric().getName(), sample.dimension().location(), sample.count(), sample.count() / Math.max(elapsed, 1));
+      if (sample.metric().isTimed()) {
+        line += String.format(Locale.ROOT, " mean %s, p50 %s, p99 %s, max %s", formatNanos(sample.mean()), formatNanos(sample.p50()), formatNanos(sample.p99()), formatNanos(sample.max()));
+      }
+      Component message = Component.literal(line);
+      source.sendSuccess(() -> message, false);
+    }
+    return samples.size();
+  }
+
+  /**
+   * Turns {@link PortalMetrics} recording on or off.
+   *
+   * @param source {@link CommandSourceStack}.
+   * @param enabled whether recording should be on.
+   * @return command result.
+   */
+  private static int setRecording(CommandSourceStack source, boolean enabled) {
+    PortalMetrics.setEnabled(enabled);
+    source.sendSuccess(() -> Component.literal("Portal metrics recording turned " + (enabled ? "on." : "off.")), true);
+    return 1;
+  }
+
+  /**
+   * Discards the recorded {@link PortalMetrics}.
+   *
+   * @param source {@link CommandSourceStack}.
+   * @return command result.
+   */
+  private static int resetStats(CommandSourceStack source) {
+    PortalMetrics.reset();
+    source.sendSuccess(() -> Component.literal("Portal metrics reset."), true);
+    return 1;
+  }
+
+  /**
+   * Formats a duration with the most readable unit.
+   *
+   * @param nanos duration in nanoseconds.
+   * @return formatted duration.
+   */
+  private static String formatNanos(double nanos) {
+    if (nanos < 1_000) {
+      return String.format(Locale.ROOT, "%.0fns", nanos);
+    }
+    if (nanos < 1_000_000) {
+      return String.format(Locale.ROOT, "%.1fus", nanos / 1_000);
+    }
+    return String.format(Locale.ROOT, "%.2fms", nanos / 1_000_000);
+  }
+}
@@ -1,16 +1,17 @@
 package it.crystalnest.server_sided_portals.handler;
 
 import it.crystalnest.server_sided_portals.api.CustomPortalChecker;
+import it.crystalnest.server_sided_portals.portal.CustomPortalDefinition;
+import it.crystalnest.server_sided_portals.portal.CustomPortalLevel;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRegistry;
+import it.crystalnest.server_sided_portals.portal.IgnitionQueue;
+import it.crystalnest.server_sided_portals.portal.PortalMetrics;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
-import net.minecraft.resources.ResourceKey;
 import net.minecraft.server.level.ServerLevel;
-import net.minecraft.tags.TagKey;
 import net.minecraft.world.InteractionHand;
 import net.minecraft.world.entity.player.Player;
-import net.minecraft.world.item.Item;
 import net.minecraft.world.level.Level;
-import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.portal.PortalShape;
 
 import java.util.Optional;
@@ -21,7 +22,8 @@ import java.util.Optional;
 public abstract class ItemUseHandler {
   /**
    * Handles the player using an item on a block.<br>
-   * Checks whether it should light up a Custom Portal.
+   * Checks whether it should light up a Custom Portal.<br>
+   * The ignition goes through the {@link IgnitionQueue} of the dimension, so it may be deferred to a later tick or dropped when too many are attempted.
    *
    * @param level {@link Level} dimension.
    * @param player {@link Player} player.
@@ -31,18 +33,60 @@ public abstract class ItemUseHandler {
    * @return whether the interaction was consumed.
    */
   protected boolean handle(Level level, Player player, InteractionHand hand, BlockPos pos, Direction face) {
-    if (level instanceof ServerLevel server && !player.isSpectator()) {
-      Optional<TagKey<Block>> frame = CustomPortalChecker.getDimensionsWithCustomPortal(server).stream().map(CustomPortalChecker::getCustomPortalFrameTag).filter(tag -> server.getBlockState(pos).is(tag)).findAny();
-      Optional<TagKey<Item>> igniter = CustomPortalChecker.getDimensionsWithCustomPortal(server).stream().map(CustomPortalChecker::getCustomPortalIgniterTag).filter(tag -> player.getItemInHand(hand).is(tag)).findAny();
-      if (frame.isPresent() && igniter.isPresent()) {
-        Optional<PortalShape> portal = PortalShape.findEmptyPortalShape(server, pos.relative(face), Direction.Axis.X);
-        if (portal.isPresent()) {
-          ResourceKey<Level> dimension = ((CustomPortalChecker) portal.get()).dimension();
-          if (CustomPortalChecker.getCustomPortalFrameTag(dimension).equals(frame.get()) && CustomPortalChecker.getCustomPortalIgniterTag(dimension).equals(igniter.get())) {
+    CustomPortalRegistry registry;
+    if (level instanceof ServerLevel server && !player.isSpectator() && !(registry = CustomPortalRegistry.get(server.getServer())).isEmpty()) {
+      // Reject as early as possible, most interactions are not made with a Custom Portal Igniter.
+      long igniters = registry.igniterMask(player.getItemInHand(hand));
+      if (igniters == 0 || (registry.frameMask(server.getBlockState(pos)) & igniters) == 0) {
+        return false;
+      }
+      long start = PortalMetrics.start();
+      try {
+        IgnitionQueue queue = ((CustomPortalLevel) server).ignitionQueue();
+        BlockPos target = pos.relative(face);
+        switch (queue.admit(server, target, player.getUUID(), () -> ignite(server, pos, target, igniters))) {
+          case RUN -> {
+            if (queue.run(() -> ignite(server, pos, target, igniters))) {
+              player.swing(hand, true);
+              return true;
+            }
+            return false;
+          }
+          case QUEUED -> {
             player.swing(hand, true);
-            portal.get().createPortalBlocks(level);
             return true;
           }
+          default -> {
+            // Consume throttled attempts too, so that they don't fall back to placing fire and scanning the frame anyway.
+            return true;
+          }
+        }
+      } finally {
+        PortalMetrics.stop(PortalMetrics.Metric.ITEM_IGNITION, server.dimension(), start);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Lights up the Custom Portal framed by the given block, if any.
+   *
+   * @param level dimension.
+   * @param pos position of the right-clicked block.
+   * @param target position of the portal interior.
+   * @param igniters {@link CustomPortalRegistry#igniterMask} of the used item.
+   * @return whether a Custom Portal was lit up.
+   */
+  private static boolean ignite(ServerLevel level, BlockPos pos, BlockPos target, long igniters) {
+    CustomPortalRegistry registry = CustomPortalRegistry.get(level.getServer());
+    long frames = registry.frameMask(level.getBlockState(pos)) & igniters;
+    if (frames != 0) {
+      Optional<PortalShape> portal = PortalShape.findEmptyPortalShape(level, target, Direction.Axis.X);
+      if (portal.isPresent()) {
+        CustomPortalDefinition definition = registry.definition(((CustomPortalChecker) portal.get()).dimension());
+        if (definition != null && (frames & definition.mask()) != 0) {
+          portal.get().createPortalBlocks(level);
+          return true;
         }
       }
     }
@@ -0,0 +1,43 @@
+package it.crystalnest.server_sided_portals.handler;
+
+import it.crystalnest.server_sided_portals.config.ModConfig;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRegistry;
+import it.crystalnest.server_sided_portals.portal.ExitPregenerator;
+import net.minecraft.server.MinecraftServer;
+
+/**
+ * Handler for server lifecycle events.
+ */
+public abstract class ServerLifecycleHandler {
+  /**
+   * Handles the server having started.<br>
+   * Builds the {@link CustomPortalRegistry}.
+   *
+   * @param server {@link MinecraftServer}.
+   */
+  protected void onServerStarted(MinecraftServer server) {
+    CustomPortalRegistry.rebuild(server);
+  }
+
+  /**
+   * Handles the server having reloaded its datapacks and tags.<br>
+   * Reloads the {@link ModConfig} and rebuilds the {@link CustomPortalRegistry}.
+   *
+   * @param server {@link MinecraftServer}.
+   */
+  protected void onDataReloaded(MinecraftServer server) {
+    ModConfig.load();
+    CustomPortalRegistry.rebuild(server);
+  }
+
+  /**
+   * Handles the server having stopped.<br>
+   * Discards the {@link CustomPortalRegistry} and any exit pregeneration underway.
+   *
+   * @param server {@link MinecraftServer}.
+   */
+  protected void onServerStopped(MinecraftServer server) {
+    CustomPortalRegistry.clear();
+    ExitPregenerator.clear();
+  }
+}
@@ -1,11 +1,20 @@
 package it.crystalnest.server_sided_portals.mixin;
 
 import com.llamalad7.mixinextras.injector.ModifyExpressionValue;
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
 import it.crystalnest.server_sided_portals.api.CustomPortalChecker;
+import it.crystalnest.server_sided_portals.portal.CustomPortalDefinition;
+import it.crystalnest.server_sided_portals.portal.CustomPortalLevel;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRegistry;
+import it.crystalnest.server_sided_portals.portal.IgnitionQueue;
+import it.crystalnest.server_sided_portals.portal.PortalMetrics;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
+import net.minecraft.resources.ResourceKey;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.Level;
+import net.minecraft.world.level.LevelAccessor;
 import net.minecraft.world.level.block.BaseFireBlock;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.state.BlockState;
@@ -23,20 +32,48 @@ import java.util.Optional;
 @Mixin(BaseFireBlock.class)
 public abstract class BaseFireBlockMixin {
   /**
-   * Checks whether there is any Custom Portal Frame Block at the given position.
+   * Checks whether the given {@link BlockState} is any Custom Portal Frame Block.
    *
    * @param level dimension.
-   * @param pos position.
+   * @param state block state.
    * @return whether there is a valid Custom Portal Frame Block.
    */
   @Unique
-  private static boolean checkCustomPortalFrame(Level level, BlockPos pos) {
-    return level instanceof ServerLevel server && CustomPortalChecker.getDimensionsWithCustomPortal(server).stream().map(CustomPortalChecker::getCustomPortalFrameTag).anyMatch(tag -> level.getBlockState(pos).is(tag));
+  private static boolean checkCustomPortalFrame(Level level, BlockState state) {
+    if (level instanceof ServerLevel server) {
+      // A single table read, cheaper than timing it.
+      PortalMetrics.count(PortalMetrics.Metric.FIRE_FRAME_CHECK, level.dimension());
+      return CustomPortalRegistry.get(server.getServer()).isFrame(state);
+    }
+    return false;
+  }
+
+  /**
+   * Whether any Custom Portal can be lit in the given dimension.
+   *
+   * @param level dimension.
+   * @return whether any Custom Portal can be lit in the given dimension.
+   */
+  @Unique
+  private static boolean canLightCustomPortal(Level level) {
+    return level instanceof ServerLevel server ? CustomPortalRegistry.get(server.getServer()).lightableMask(level.dimension()) != 0 : CustomPortalChecker.hasCustomPortalFrame(level);
+  }
+
+  /**
+   * Whether fire lights the portals leading to the given dimension.
+   *
+   * @param dimension portal dimension.
+   * @return whether fire lights the portal, always {@code true} for Nether Portals.
+   */
+  @Unique
+  private static boolean isLitByFire(ResourceKey<Level> dimension) {
+    CustomPortalDefinition definition = CustomPortalRegistry.get().definition(dimension);
+    return definition == null || definition.litByFire();
   }
 
   /**
    * Modifies the value of the check at {@link BaseFireBlock#inPortalDimension(Level)} inside the method {@link BaseFireBlock#isPortal(Level, BlockPos, Direction)}.<br>
-   * Checks also whether the dimension is suitable for a Custom Portal.
+   * Checks also whether a Custom Portal can be lit in the dimension.
    *
    * @param original original check value.
    * @param level dimension.
@@ -44,7 +81,7 @@ public abstract class BaseFireBlockMixin {
    */
   @ModifyExpressionValue(method = "isPortal", at = @At(value = "INVOKE", target = "Lnet/minecraft/world/level/block/BaseFireBlock;inPortalDimension(Lnet/minecraft/world/level/Level;)Z"))
   private static boolean modifyInPortalDimension$isPortal(boolean original, Level level) {
-    return original || CustomPortalChecker.hasCustomPortalFrame(level);
+    return original || canLightCustomPortal(level);
   }
 
   /**
@@ -57,12 +94,13 @@ public abstract class BaseFireBlockMixin {
    */
   @Redirect(method = "isPortal", at = @At(value = "INVOKE", target = "Lnet/minecraft/world/level/Level;getBlockState(Lnet/minecraft/core/BlockPos;)Lnet/minecraft/world/level/block/state/BlockState;"))
   private static BlockState redirectGetBlockState(Level instance, BlockPos pos) {
-    return checkCustomPortalFrame(instance, pos) ? Blocks.OBSIDIAN.defaultBlockState() : instance.getBlockState(pos);
+    BlockState state = instance.getBlockState(pos);
+    return checkCustomPortalFrame(instance, state) ? Blocks.OBSIDIAN.defaultBlockState() : state;
   }
 
   /**
    * Modifies the value of the check at {@link BaseFireBlock#inPortalDimension(Level)} inside the method {@link BaseFireBlock#onPlace(BlockState, Level, BlockPos, BlockState, boolean)}.<br>
-   * Checks also whether the dimension is suitable for a Custom Portal.
+   * Checks also whether a Custom Portal can be lit in the dimension.
    *
    * @param original original check value.
    * @param state current {@link BlockState}.
@@ -74,7 +112,7 @@ public abstract class BaseFireBlockMixin {
    */
   @ModifyExpressionValue(method = "onPlace", at = @At(value = "INVOKE", target = "Lnet/minecraft/world/level/block/BaseFireBlock;inPortalDimension(Lnet/minecraft/world/level/Level;)Z"))
   private boolean modifyInPortalDimension$onPlace(boolean original, BlockState state, Level level, BlockPos pos, BlockState oldState, boolean isMoving) {
-    return original || CustomPortalChecker.hasCustomPortalFrame(level);
+    return original || canLightCustomPortal(level);
   }
 
   /**
@@ -86,6 +124,64 @@ public abstract class BaseFireBlockMixin {
    */
   @Redirect(method = "onPlace", at = @At(value = "INVOKE", target = "Ljava/util/Optional;isPresent()Z"))
   private boolean redirectIsPresent(Optional<PortalShape> instance) {
-    return instance.isPresent() && !CustomPortalChecker.hasCustomPortalIgniter(((CustomPortalChecker) instance.get()).dimension());
+    return instance.isPresent() && isLitByFire(((CustomPortalChecker) instance.get()).dimension());
+  }
+
+  /**
+   * Wraps the call to {@link PortalShape#findEmptyPortalShape(LevelAccessor, BlockPos, Direction.Axis)} inside the method {@link BaseFireBlock#onPlace(BlockState, Level, BlockPos, BlockState, boolean)}.<br>
+   * Routes the ignition through the {@link IgnitionQueue} of the dimension, deferring it to a later tick or dropping it when too many are attempted.<br>
+   * Only fire placed on a Custom Portal Frame goes through the queue, Nether Portal ignition and ordinary fire spread are left untouched.
+   *
+   * @param level dimension.
+   * @param pos fire position.
+   * @param axis portal orientation.
+   * @param original original operation.
+   * @return portal to light up, empty if there is none or if the ignition has been deferred or dropped.
+   */
+  @WrapOperation(method = "onPlace", at = @At(value = "INVOKE", target = "Lnet/minecraft/world/level/portal/PortalShape;findEmptyPortalShape(Lnet/minecraft/world/level/LevelAccessor;Lnet/minecraft/core/BlockPos;Lnet/minecraft/core/Direction$Axis;)Ljava/util/Optional;"))
+  private Optional<PortalShape> wrapFindEmptyPortalShape$onPlace(LevelAccessor level, BlockPos pos, Direction.Axis axis, Operation<Optional<PortalShape>> original) {
+    if (level instanceof ServerLevel server && server.getServer().isSameThread() && isOnCustomPortalFrame(server, pos)) {
+      IgnitionQueue queue = ((CustomPortalLevel) server).ignitionQueue();
+      BlockPos target = pos.immutable();
+      return switch (queue.admit(server, target, null, () -> igniteLater(server, target, axis))) {
+        case RUN -> queue.run(() -> original.call(level, pos, axis));
+        case QUEUED, THROTTLED -> Optional.empty();
+      };
+    }
+    return original.call(level, pos, axis);
+  }
+
+  /**
+   * Whether the fire at the given position has been placed on a Custom Portal Frame.
+   *
+   * @param level dimension.
+   * @param pos fire position.
+   * @return whether the block below the fire is a Custom Portal Frame.
+   */
+  @Unique
+  private static boolean isOnCustomPortalFrame(ServerLevel level, BlockPos pos) {
+    CustomPortalRegistry registry = CustomPortalRegistry.get(level.getServer());
+    return !registry.isEmpty() && registry.frameMask(level.getBlockState(pos.below())) != 0;
+  }
+
+  /**
+   * Lights up the portal around a fire whose ignition has been deferred, if the fire is still there.
+   *
+   * @param level dimension.
+   * @param pos fire position.
+   * @param axis portal orientation.
+   * @return whether a portal was lit up.
+   */
+  @Unique
+  private static boolean igniteLater(ServerLevel level, BlockPos pos, Direction.Axis axis) {
+    if (level.getBlockState(pos).getBlock() instanceof BaseFireBlock) {
+      Optional<PortalShape> portal = PortalShape.findEmptyPortalShape(level, pos, axis);
+      // Same check as the one on Optional#isPresent in onPlace.
+      if (portal.isPresent() && isLitByFire(((CustomPortalChecker) portal.get()).dimension())) {
+        portal.get().createPortalBlocks(level);
+        return true;
+      }
+    }
+    return false;
   }
 }
@@ -0,0 +1,30 @@
+package it.crystalnest.server_sided_portals.mixin;
+
+import it.crystalnest.server_sided_portals.portal.CustomPortalBlockState;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockBehaviour;
+import net.minecraft.world.level.block.state.BlockState;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+
+/**
+ * Injects into {@link BlockBehaviour.BlockStateBase} to cache the global id of each block state.
+ */
+@Mixin(BlockBehaviour.BlockStateBase.class)
+public abstract class BlockStateBaseMixin implements CustomPortalBlockState {
+  /**
+   * Cached global id, {@code -1} until it has been looked up.
+   */
+  @Unique
+  private int portalStateId = -1;
+
+  @Override
+  public int portalStateId() {
+    int id = portalStateId;
+    if (id < 0) {
+      // Block states are registered once and never change id, racing threads would store the same value.
+      id = portalStateId = Block.getId((BlockState) (Object) this);
+    }
+    return id;
+  }
+}
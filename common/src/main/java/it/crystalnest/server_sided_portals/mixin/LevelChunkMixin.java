@@ -0,0 +1,53 @@
+package it.crystalnest.server_sided_portals.mixin;
+
+import it.crystalnest.server_sided_portals.portal.CustomPortalLevel;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRegistry;
+import it.crystalnest.server_sided_portals.portal.PortalShapeCache;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+/**
+ * Injects into {@link LevelChunk} to keep the Custom Portal state of each dimension up to date.
+ */
+@Mixin(LevelChunk.class)
+public abstract class LevelChunkMixin {
+  /**
+   * Shadowed {@link LevelChunk#level}.
+   */
+  @Final
+  @Shadow
+  Level level;
+
+  /**
+   * Injects at the end of the method {@link LevelChunk#setBlockState(BlockPos, BlockState, boolean)}.<br>
+   * Invalidates the cached portal shapes depending on the changed block.<br>
+   * This runs before any neighbor update, so portal blocks reacting to the change never see a stale shape. Changes made off the server thread, e.g. by
+   * asynchronous world edits, are invalidated before the cache is accessed again.<br>
+   * Does nothing when there are no Custom Portals, as shapes are only cached if there are.
+   *
+   * @param pos position.
+   * @param state new block state.
+   * @param isMoving whether the block is being moved.
+   * @param cir {@link CallbackInfoReturnable}.
+   */
+  @Inject(method = "setBlockState", at = @At(value = "RETURN"))
+  private void onSetBlockState(BlockPos pos, BlockState state, boolean isMoving, CallbackInfoReturnable<BlockState> cir) {
+    if (cir.getReturnValue() != null && level instanceof ServerLevel serverLevel && !CustomPortalRegistry.get().isEmpty()) {
+      PortalShapeCache cache = ((CustomPortalLevel) serverLevel).portalShapeCache();
+      if (serverLevel.getServer().isSameThread()) {
+        cache.invalidate(pos);
+      } else {
+        cache.invalidateLater(pos);
+      }
+    }
+  }
+}
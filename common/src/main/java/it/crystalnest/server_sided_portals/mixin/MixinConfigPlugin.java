@@ -0,0 +1,41 @@
+package it.crystalnest.server_sided_portals.mixin;
+
+import it.crystalnest.server_sided_portals.MixinToggle;
+import org.objectweb.asm.tree.ClassNode;
+import org.spongepowered.asm.mixin.extensibility.IMixinConfigPlugin;
+import org.spongepowered.asm.mixin.extensibility.IMixinInfo;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Mixin config plugin, skips all the mod mixins when {@link MixinToggle} is off.
+ */
+public final class MixinConfigPlugin implements IMixinConfigPlugin {
+  @Override
+  public void onLoad(String mixinPackage) {}
+
+  @Override
+  public String getRefMapperConfig() {
+    return null;
+  }
+
+  @Override
+  public boolean shouldApplyMixin(String targetClassName, String mixinClassName) {
+    return MixinToggle.ENABLED;
+  }
+
+  @Override
+  public void acceptTargets(Set<String> myTargets, Set<String> otherTargets) {}
+
+  @Override
+  public List<String> getMixins() {
+    return null;
+  }
+
+  @Override
+  public void preApply(String targetClassName, ClassNode targetClass, String mixinClassName, IMixinInfo mixinInfo) {}
+
+  @Override
+  public void postApply(String targetClassName, ClassNode targetClass, String mixinClassName, IMixinInfo mixinInfo) {}
+}
@@ -1,9 +1,29 @@
 package it.crystalnest.server_sided_portals.mixin;
 
 import com.llamalad7.mixinextras.injector.ModifyExpressionValue;
-import it.crystalnest.server_sided_portals.Constants;
+import com.llamalad7.mixinextras.injector.ModifyReturnValue;
+import com.llamalad7.mixinextras.injector.wrapmethod.WrapMethod;
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+import com.llamalad7.mixinextras.injector.wrapoperation.WrapOperation;
 import it.crystalnest.server_sided_portals.api.CustomPortalChecker;
+import it.crystalnest.server_sided_portals.api.PortalDestination;
+import it.crystalnest.server_sided_portals.api.PortalDestinationResolver;
+import it.crystalnest.server_sided_portals.platform.Services;
+import it.crystalnest.server_sided_portals.portal.CustomPortalDefinition;
+import it.crystalnest.server_sided_portals.portal.CustomPortalForcer;
+import it.crystalnest.server_sided_portals.portal.CustomPortalLevel;
+import it.crystalnest.server_sided_portals.portal.CustomPortalLinks;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRecord;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRecords;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRegistry;
+import it.crystalnest.server_sided_portals.portal.PortalMetrics;
+import it.crystalnest.server_sided_portals.portal.PortalTeleportEvent;
+import it.crystalnest.server_sided_portals.portal.PortalTransitMemo;
+import it.crystalnest.server_sided_portals.portal.PortalVerifier;
+import it.crystalnest.server_sided_portals.portal.TeleportContext;
+import net.minecraft.BlockUtil;
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
@@ -12,17 +32,22 @@ import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.level.BlockGetter;
 import net.minecraft.world.level.Level;
+import net.minecraft.world.level.LevelReader;
+import net.minecraft.world.level.ScheduledTickAccess;
+import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.NetherPortalBlock;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.border.WorldBorder;
+import net.minecraft.world.level.portal.PortalForcer;
 import net.minecraft.world.level.portal.TeleportTransition;
+import org.jetbrains.annotations.Nullable;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
-import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.Redirect;
-import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
-import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Predicate;
 
 /**
  * Injects into {@link NetherPortalBlock} to alter Custom Portals mob spawn and dimension travel.
@@ -30,44 +55,207 @@ import java.util.Objects;
 @Mixin(NetherPortalBlock.class)
 public abstract class NetherPortalBlockMixin {
   /**
-   * Injects at the start of the method {@link NetherPortalBlock#getExitPortal(ServerLevel, Entity, BlockPos, BlockPos, boolean, WorldBorder)}.<br>
-   * Sets the origin dimension for this entity.
+   * Returns the record of the Custom Portal the entity is travelling through.
    *
+   * @param entity entity travelling.
+   * @param pos entrance position.
+   * @return the record or {@code null} if the entity is not travelling through a recorded Custom Portal.
+   */
+  @Unique
+  @Nullable
+  private static CustomPortalRecord getEntrance(Entity entity, BlockPos pos) {
+    return entity.level() instanceof ServerLevel level && !CustomPortalRegistry.get(level.getServer()).isEmpty() ? CustomPortalRecords.get(level).find(pos) : null;
+  }
+
+  /**
+   * Returns the {@link TeleportContext} of the entity travelling through the portal at the given position.
+   *
+   * @param entity entity travelling.
+   * @param pos entrance position.
+   * @return {@link TeleportContext}.
+   */
+  @Unique
+  private static TeleportContext getTeleportContext(Entity entity, BlockPos pos) {
+    ServerLevel level = (ServerLevel) entity.level();
+    CustomPortalRegistry registry = CustomPortalRegistry.get(level.getServer());
+    if (registry.isEmpty()) {
+      return new TeleportContext(level, null);
+    }
+    ResourceKey<Level> dimension = ((CustomPortalLevel) level).portalTransitMemo().portalDimension(level, pos);
+    return new TeleportContext(level, registry.contains(dimension) ? dimension : null);
+  }
+
+  /**
+   * Wraps the call to {@link PortalForcer#findClosestPortalPosition(BlockPos, boolean, WorldBorder)} inside the method {@link NetherPortalBlock#getExitPortal(ServerLevel, Entity, BlockPos, BlockPos, boolean, WorldBorder)}.<br>
+   * Searches the exit portal with {@link CustomPortalForcer#findExitPortal(TeleportContext, BlockPos, boolean, WorldBorder)}, for this travel.<br>
+   * Answers from the {@link PortalTransitMemo} when another entity already went through the same Custom Portal during this tick, then from the
+   * {@link CustomPortalLinks} when the entrance is a linked Custom Portal, otherwise links the entrance to the exit portal found.
+   *
+   * @param instance {@link PortalForcer} of the destination.
+   * @param searchPos position to search around.
+   * @param searchNether whether the destination is the Nether.
+   * @param searchBorder world border.
+   * @param original original call.
    * @param destination destination.
    * @param entity entity travelling.
    * @param pos entrance position.
+   * @return closest exit portal, if any.
+   */
+  @WrapOperation(method = "getExitPortal", at = @At(value = "INVOKE", target = "Lnet/minecraft/world/level/portal/PortalForcer;findClosestPortalPosition(Lnet/minecraft/core/BlockPos;ZLnet/minecraft/world/level/border/WorldBorder;)Ljava/util/Optional;"))
+  private Optional<BlockPos> wrapFindClosestPortalPosition(PortalForcer instance, BlockPos searchPos, boolean searchNether, WorldBorder searchBorder, Operation<Optional<BlockPos>> original, ServerLevel destination, Entity entity, BlockPos pos) {
+    ServerLevel level = (ServerLevel) entity.level();
+    CustomPortalRecord entrance = getEntrance(entity, pos);
+    if (entrance == null) {
+      return ((CustomPortalForcer) instance).findExitPortal(getTeleportContext(entity, pos), searchPos, searchNether, searchBorder);
+    }
+    PortalTransitMemo memo = ((CustomPortalLevel) level).portalTransitMemo();
+    PortalTransitMemo.Exit memoized = memo.exit(level, entrance);
+    if (memoized != null) {
+      return memoized.pos();
+    }
+    CustomPortalLinks links = CustomPortalLinks.get(level.getServer());
+    Optional<BlockPos> exit = links.findExit(level, entrance, destination, searchPos);
+    if (exit.isPresent()) {
+      PortalMetrics.count(PortalMetrics.Metric.LINK_HIT, destination.dimension());
+    } else {
+      exit = ((CustomPortalForcer) instance).findExitPortal(new TeleportContext(level, entrance.dimension()), searchPos, searchNether, searchBorder);
+      CustomPortalRecord found = exit.map(CustomPortalRecords.get(destination)::find).orElse(null);
+      if (found != null) {
+        links.link(level.dimension(), entrance, destination.dimension(), found);
+      }
+    }
+    memo.putExit(level, entrance, exit);
+    return exit;
+  }
+
+  /**
+   * Wraps the call to {@link PortalForcer#createPortal(BlockPos, Direction.Axis)} inside the method {@link NetherPortalBlock#getExitPortal(ServerLevel, Entity, BlockPos, BlockPos, boolean, WorldBorder)}.<br>
+   * Creates the exit portal with {@link CustomPortalForcer#createExitPortal(TeleportContext, BlockPos, Direction.Axis)}, for this travel.<br>
+   * Links the entrance to the created exit portal, if both are Custom Portals, and lets other entities going through the same entrance during this
+   * tick reuse it.
+   *
+   * @param instance {@link PortalForcer} of the destination.
    * @param exitPos exit position.
-   * @param isNether whether the destination is the Nether.
-   * @param worldBorder world border.
-   * @param cir {@link CallbackInfoReturnable}.
+   * @param axis portal orientation.
+   * @param original original call.
+   * @param destination destination.
+   * @param entity entity travelling.
+   * @param pos entrance position.
+   * @return created exit portal, if any.
+   */
+  @WrapOperation(method = "getExitPortal", at = @At(value = "INVOKE", target = "Lnet/minecraft/world/level/portal/PortalForcer;createPortal(Lnet/minecraft/core/BlockPos;Lnet/minecraft/core/Direction$Axis;)Ljava/util/Optional;"))
+  private Optional<BlockUtil.FoundRectangle> wrapCreatePortal(PortalForcer instance, BlockPos exitPos, Direction.Axis axis, Operation<Optional<BlockUtil.FoundRectangle>> original, ServerLevel destination, Entity entity, BlockPos pos) {
+    Optional<BlockUtil.FoundRectangle> created = ((CustomPortalForcer) instance).createExitPortal(getTeleportContext(entity, pos), exitPos, axis);
+    CustomPortalRecord entrance;
+    if (created.isPresent() && (entrance = getEntrance(entity, pos)) != null) {
+      ((CustomPortalLevel) entity.level()).portalTransitMemo().putExit((ServerLevel) entity.level(), entrance, created.get());
+      CustomPortalRecord exit = CustomPortalRecords.get(destination).find(created.get().minCorner);
+      if (exit != null) {
+        CustomPortalLinks.get(destination.getServer()).link(entity.level().dimension(), entrance, destination.dimension(), exit);
+      }
+    }
+    return created;
+  }
+
+  /**
+   * Wraps the call to {@link BlockUtil#getLargestRectangleAround(BlockPos, Direction.Axis, int, Direction.Axis, int, Predicate)} inside the method
+   * {@link NetherPortalBlock#getExitPortal(ServerLevel, Entity, BlockPos, BlockPos, boolean, WorldBorder)}.<br>
+   * Reuses the exit portal interior computed for another entity going through the same Custom Portal during this tick.
+   *
+   * @param center exit portal block.
+   * @param primaryAxis primary axis.
+   * @param primaryMaxBlocks primary axis maximum size.
+   * @param secondaryAxis secondary axis.
+   * @param secondaryMaxBlocks secondary axis maximum size.
+   * @param predicate whether a block is part of the exit portal.
+   * @param original original call.
+   * @param destination destination.
+   * @param entity entity travelling.
+   * @param pos entrance position.
+   * @return exit portal interior.
    */
-  @Inject(method = "getExitPortal", at = @At(value = "HEAD"))
-  private void onGetExitPortal(ServerLevel destination, Entity entity, BlockPos pos, BlockPos exitPos, boolean isNether, WorldBorder worldBorder, CallbackInfoReturnable<TeleportTransition> cir) {
-    Constants.DIMENSION_ORIGIN_THREAD.set(entity.level().dimension());
+  @WrapOperation(method = "getExitPortal", at = @At(value = "INVOKE", target = "Lnet/minecraft/BlockUtil;getLargestRectangleAround(Lnet/minecraft/core/BlockPos;Lnet/minecraft/core/Direction$Axis;ILnet/minecraft/core/Direction$Axis;ILjava/util/function/Predicate;)Lnet/minecraft/BlockUtil$FoundRectangle;"))
+  private BlockUtil.FoundRectangle wrapGetLargestRectangleAround(BlockPos center, Direction.Axis primaryAxis, int primaryMaxBlocks, Direction.Axis secondaryAxis, int secondaryMaxBlocks, Predicate<BlockPos> predicate, Operation<BlockUtil.FoundRectangle> original, ServerLevel destination, Entity entity, BlockPos pos) {
+    CustomPortalRecord entrance = getEntrance(entity, pos);
+    PortalTransitMemo.Exit exit = entrance == null ? null : ((CustomPortalLevel) entity.level()).portalTransitMemo().exit((ServerLevel) entity.level(), entrance);
+    if (exit == null || !exit.pos().map(center::equals).orElse(false)) {
+      return original.call(center, primaryAxis, primaryMaxBlocks, secondaryAxis, secondaryMaxBlocks, predicate);
+    }
+    if (exit.rectangle() == null) {
+      exit.setRectangle(original.call(center, primaryAxis, primaryMaxBlocks, secondaryAxis, secondaryMaxBlocks, predicate));
+    }
+    return exit.rectangle();
+  }
+
+  /**
+   * Wraps the method {@link NetherPortalBlock#getPortalDestination(ServerLevel, Entity, BlockPos)}.<br>
+   * Emits a {@link PortalTeleportEvent}.
+   *
+   * @param level current dimension.
+   * @param entity entity travelling.
+   * @param pos entrance position.
+   * @param original original method.
+   * @return {@link TeleportTransition} or {@code null} if the entity can't travel.
+   */
+  @WrapMethod(method = "getPortalDestination")
+  @Nullable
+  private TeleportTransition wrapGetPortalDestination(ServerLevel level, Entity entity, BlockPos pos, Operation<TeleportTransition> original) {
+    PortalTeleportEvent event = new PortalTeleportEvent();
+    event.begin();
+    TeleportTransition transition = original.call(level, entity, pos);
+    if (event.shouldCommit()) {
+      event.entity = EntityType.getKey(entity.getType()).toString();
+      event.origin = level.dimension().location().toString();
+      event.destination = transition == null ? "" : transition.newLevel().dimension().location().toString();
+      event.x = pos.getX();
+      event.y = pos.getY();
+      event.z = pos.getZ();
+      event.commit();
+    }
+    return transition;
   }
 
   /**
    * Redirects the call to {@link MinecraftServer#getLevel(ResourceKey)} inside the method {@link NetherPortalBlock#getPortalDestination(ServerLevel, Entity, BlockPos)}.<br>
-   * Corrects the destination dimension if needed.
+   * Corrects the destination dimension if needed, looking up the portal dimension once per portal block and tick.<br>
+   * The destination of Custom Portals is decided by the {@link PortalDestinationResolver}, which may hand the entity off to another server instead.
    *
    * @param instance Minecraft server.
    * @param dimension Vanilla destination dimension.
    * @param level current dimension.
    * @param entity entity travelling.
    * @param pos entrance position.
-   * @return the correct dimension the entity should travel to.
+   * @return the correct dimension the entity should travel to, {@code null} if it doesn't travel on this server.
    */
+  @Nullable
   @Redirect(method = "getPortalDestination", at = @At(value = "INVOKE", target = "Lnet/minecraft/server/MinecraftServer;getLevel(Lnet/minecraft/resources/ResourceKey;)Lnet/minecraft/server/level/ServerLevel;"))
   private ServerLevel onGetPortalDestination(MinecraftServer instance, ResourceKey<Level> dimension, ServerLevel level, Entity entity, BlockPos pos) {
-    if (dimension == Level.NETHER && CustomPortalChecker.isCustomPortal(level, pos)) {
-      return instance.getLevel(level.dimension() == Level.OVERWORLD ? Objects.requireNonNull(CustomPortalChecker.getPortalDimension(level, pos)) : Level.OVERWORLD);
+    if (CustomPortalRegistry.get(instance).lightableMask(level.dimension()) != 0) {
+      ResourceKey<Level> portalDimension = ((CustomPortalLevel) level).portalTransitMemo().portalDimension(level, pos);
+      if (CustomPortalChecker.hasCustomPortalFrame(portalDimension)) {
+        return switch (Services.PORTAL_DESTINATION.resolve(level, entity, pos, portalDimension)) {
+          case PortalDestination.Local local -> {
+            if (local.level() != null) {
+              PortalMetrics.count(PortalMetrics.Metric.TELEPORT, local.level().dimension());
+            }
+            yield local.level();
+          }
+          case PortalDestination.Remote remote -> {
+            // No local travel, the entity is handed off to the server hosting the destination.
+            PortalMetrics.count(PortalMetrics.Metric.REMOTE_HANDOFF, remote.dimension());
+            remote.handoff().accept(entity);
+            yield null;
+          }
+        };
+      }
     }
     return instance.getLevel(dimension);
   }
 
   /**
    * Modifies the condition returned by {@link BlockState#isValidSpawn(BlockGetter, BlockPos, EntityType)} inside the method {@link NetherPortalBlock#randomTick(BlockState, ServerLevel, BlockPos, RandomSource)}.<br>
-   * Prevents Zombified Piglins spawn when it's a Custom Portal.
+   * Prevents Zombified Piglins spawn when it's a Custom Portal.<br>
+   * Never loads chunks: when the portal can't be verified with the loaded ones the spawn is skipped, a later random tick will try again.
    *
    * @param original original condition value.
    * @param state block state.
@@ -78,6 +266,87 @@ public abstract class NetherPortalBlockMixin {
    */
   @ModifyExpressionValue(method = "randomTick", at = @At(value = "INVOKE", target = "Lnet/minecraft/world/level/block/state/BlockState;isValidSpawn(Lnet/minecraft/world/level/BlockGetter;Lnet/minecraft/core/BlockPos;Lnet/minecraft/world/entity/EntityType;)Z"))
   private boolean modifyIsValidSpawn(boolean original, BlockState state, ServerLevel level, BlockPos pos, RandomSource rand) {
-    return original && !CustomPortalChecker.isCustomPortal(level, pos.above());
+    if (!original) {
+      return false;
+    }
+    ResourceKey<Level> dimension = PortalVerifier.portalDimension(level, pos.above());
+    return dimension != null && !CustomPortalChecker.hasCustomPortalFrame(dimension);
+  }
+
+  /**
+   * Wraps the method {@link NetherPortalBlock#updateShape(BlockState, LevelReader, ScheduledTickAccess, BlockPos, Direction, BlockPos, BlockState, RandomSource)}.<br>
+   * Revalidates recorded Custom Portals incrementally instead of detecting their whole shape again.<br>
+   * Changes outside the portal are ignored, and changes to its frame only check the changed block against the frame tag of the portal dimension.
+   * Anything else, e.g. a change inside the portal or a frame block being replaced with something else, falls back to the full check.<br>
+   * Without Custom Portals, the records are not even looked up.
+   *
+   * @param state block state.
+   * @param level dimension.
+   * @param scheduledTickAccess {@link ScheduledTickAccess}.
+   * @param pos position.
+   * @param direction direction of the neighbor.
+   * @param neighborPos neighbor position.
+   * @param neighborState neighbor block state.
+   * @param random random source.
+   * @param original original method.
+   * @return the updated block state.
+   */
+  @WrapMethod(method = "updateShape")
+  private BlockState wrapUpdateShape(BlockState state, LevelReader level, ScheduledTickAccess scheduledTickAccess, BlockPos pos, Direction direction, BlockPos neighborPos, BlockState neighborState, RandomSource random, Operation<BlockState> original) {
+    if (level instanceof ServerLevel serverLevel && !neighborState.is(Blocks.NETHER_PORTAL) && !CustomPortalRegistry.get(serverLevel.getServer()).isEmpty()) {
+      CustomPortalRecord record = CustomPortalRecords.get(serverLevel).find(pos);
+      if (record != null && record.axis() == state.getValue(NetherPortalBlock.AXIS) && isIntact(serverLevel, record, neighborPos, neighborState)) {
+        return state;
+      }
+    }
+    return original.call(state, level, scheduledTickAccess, pos, direction, neighborPos, neighborState, random);
+  }
+
+  /**
+   * Whether the given recorded Custom Portal is still intact after the given block change next to it.
+   *
+   * @param level dimension.
+   * @param record recorded Custom Portal.
+   * @param changedPos changed position.
+   * @param changedState new block state.
+   * @return whether the portal is certainly still intact, {@code false} if it needs a full check.
+   */
+  @Unique
+  private static boolean isIntact(ServerLevel level, CustomPortalRecord record, BlockPos changedPos, BlockState changedState) {
+    if (!record.containsWithFrame(changedPos.getX(), changedPos.getY(), changedPos.getZ())) {
+      return true;
+    }
+    if (record.contains(changedPos)) {
+      return false;
+    }
+    CustomPortalRegistry registry = CustomPortalRegistry.get(level.getServer());
+    CustomPortalDefinition definition = registry.definition(record.dimension());
+    return definition != null && (registry.frameMask(changedState) & definition.mask()) != 0;
+  }
+
+  /**
+   * Modifies the value returned by the method {@link NetherPortalBlock#updateShape(BlockState, LevelReader, ScheduledTickAccess, BlockPos, Direction, BlockPos, BlockState, RandomSource)}.<br>
+   * Removes the Custom Portal record and its link when the portal breaks.
+   *
+   * @param original original returned value.
+   * @param state block state.
+   * @param level dimension.
+   * @param scheduledTickAccess {@link ScheduledTickAccess}.
+   * @param pos position.
+   * @param direction direction of the neighbor.
+   * @param neighborPos neighbor position.
+   * @param neighborState neighbor block state.
+   * @param random random source.
+   * @return the original value.
+   */
+  @ModifyReturnValue(method = "updateShape", at = @At(value = "RETURN"))
+  private BlockState onUpdateShape(BlockState original, BlockState state, LevelReader level, ScheduledTickAccess scheduledTickAccess, BlockPos pos, Direction direction, BlockPos neighborPos, BlockState neighborState, RandomSource random) {
+    if (!original.is(Blocks.NETHER_PORTAL) && level instanceof ServerLevel serverLevel && !CustomPortalRegistry.get(serverLevel.getServer()).isEmpty()) {
+      CustomPortalRecord record = CustomPortalRecords.get(serverLevel).removeAt(pos);
+      if (record != null) {
+        CustomPortalLinks.get(serverLevel.getServer()).unlink(serverLevel.dimension(), record);
+      }
+    }
+    return original;
   }
 }
@@ -1,25 +1,44 @@
 package it.crystalnest.server_sided_portals.mixin;
 
-import it.crystalnest.server_sided_portals.Constants;
-import it.crystalnest.server_sided_portals.api.CustomPortalChecker;
+import com.llamalad7.mixinextras.injector.wrapmethod.WrapMethod;
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
+import com.llamalad7.mixinextras.sugar.Share;
+import com.llamalad7.mixinextras.sugar.ref.LocalIntRef;
+import it.crystalnest.server_sided_portals.config.ModConfig;
+import it.crystalnest.server_sided_portals.portal.CustomPortalDefinition;
+import it.crystalnest.server_sided_portals.portal.CustomPortalForcer;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRecord;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRecords;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRegistry;
+import it.crystalnest.server_sided_portals.portal.ExitPortalPlacer;
+import it.crystalnest.server_sided_portals.portal.ExitPortalSearchEvent;
+import it.crystalnest.server_sided_portals.portal.PortalMetrics;
+import it.crystalnest.server_sided_portals.portal.PortalVerifier;
+import it.crystalnest.server_sided_portals.portal.TeleportContext;
+import net.minecraft.BlockUtil;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction.Axis;
+import net.minecraft.core.Vec3i;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.ai.village.poi.PoiManager;
+import net.minecraft.world.entity.ai.village.poi.PoiRecord;
+import net.minecraft.world.entity.ai.village.poi.PoiTypes;
 import net.minecraft.world.level.Level;
-import net.minecraft.world.level.block.Blocks;
-import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.block.state.properties.BlockStateProperties;
 import net.minecraft.world.level.border.WorldBorder;
 import net.minecraft.world.level.portal.PortalForcer;
+import org.apache.commons.lang3.mutable.MutableInt;
+import org.jetbrains.annotations.Nullable;
 import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
-import org.spongepowered.asm.mixin.injection.ModifyArg;
 import org.spongepowered.asm.mixin.injection.Redirect;
 
-import java.util.Objects;
+import java.util.Comparator;
+import java.util.Optional;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
@@ -27,7 +46,7 @@ import java.util.stream.Stream;
  * Injects into {@link PortalForcer} to alter portal creation and location.
  */
 @Mixin(PortalForcer.class)
-public abstract class PortalForcerMixin {
+public abstract class PortalForcerMixin implements CustomPortalForcer {
   /**
    * Shadowed {@link PortalForcer#level}.
    */
@@ -36,54 +55,153 @@ public abstract class PortalForcerMixin {
   private ServerLevel level;
 
   /**
-   * Returns the correct {@link BlockState} to create a portal.
+   * Shadowed {@link PortalForcer#findClosestPortalPosition(BlockPos, boolean, WorldBorder)}.
    *
-   * @param state block state.
-   * @return the correct {@link BlockState} to create a portal.
+   * @param exitPos exit position.
+   * @param isNether whether the destination is the Nether.
+   * @param worldBorder world border.
+   * @return closest exit portal, if any.
    */
-  @Unique
-  private BlockState getCorrectBlockState(BlockState state) {
-    if (state.is(Blocks.OBSIDIAN)) {
-      ResourceKey<Level> origin = Constants.DIMENSION_ORIGIN_THREAD.get();
-      return CustomPortalChecker.getCustomPortalFrameBlock(CustomPortalChecker.hasCustomPortalFrame(origin) ? Objects.requireNonNull(level.getServer().getLevel(origin)) : level).defaultBlockState();
+  @Shadow
+  public abstract Optional<BlockPos> findClosestPortalPosition(BlockPos exitPos, boolean isNether, WorldBorder worldBorder);
+
+  /**
+   * Shadowed {@link PortalForcer#createPortal(BlockPos, Axis)}.
+   *
+   * @param pos position.
+   * @param axis portal orientation.
+   * @return created portal, if any.
+   */
+  @Shadow
+  public abstract Optional<BlockUtil.FoundRectangle> createPortal(BlockPos pos, Axis axis);
+
+  @Override
+  public Optional<BlockPos> findExitPortal(TeleportContext context, BlockPos exitPos, boolean isNether, WorldBorder worldBorder) {
+    ResourceKey<Level> dimension = context.portalDimension();
+    if (dimension == null) {
+      return findClosestPortalPosition(exitPos, isNether, worldBorder);
+    }
+    ExitPortalSearchEvent event = new ExitPortalSearchEvent();
+    event.begin();
+    int radius = isNether ? 16 : 128;
+    long start = PortalMetrics.start();
+    MutableInt candidates = new MutableInt();
+    Optional<BlockPos> portal = CustomPortalRecords.get(level).findClosest(level, dimension, context.exitOrigin(level.dimension()), exitPos, radius, worldBorder, candidates);
+    PortalMetrics.stop(PortalMetrics.Metric.EXIT_SEARCH, dimension, start);
+    if (portal.isEmpty()) {
+      // Same as the Vanilla search, so that portals lit before they were recorded are still found.
+      PoiManager poiManager = level.getPoiManager();
+      poiManager.ensureLoadedAndValid(level, exitPos, radius);
+      portal = poiManager.getInSquare(holder -> holder.is(PoiTypes.NETHER_PORTAL), exitPos, radius, PoiManager.Occupancy.ANY)
+        .map(PoiRecord::getPos)
+        .filter(worldBorder::isWithinBounds)
+        .filter(pos -> {
+          candidates.increment();
+          return level.getBlockState(pos).hasProperty(BlockStateProperties.HORIZONTAL_AXIS) && isPortalFor(pos, dimension);
+        })
+        .min(Comparator.<BlockPos>comparingDouble(pos -> pos.distSqr(exitPos)).thenComparingInt(Vec3i::getY));
     }
-    return state;
+    commitSearchEvent(event, exitPos, dimension, candidates.intValue(), portal);
+    return portal;
+  }
+
+  @Override
+  public Optional<BlockUtil.FoundRectangle> createExitPortal(TeleportContext context, BlockPos pos, Axis axis) {
+    ResourceKey<Level> dimension = context.portalDimension();
+    CustomPortalDefinition definition = dimension == null ? null : CustomPortalRegistry.get(level.getServer()).definition(dimension);
+    if (definition == null) {
+      return createPortal(pos, axis);
+    }
+    Optional<BlockUtil.FoundRectangle> portal = ExitPortalPlacer.createPortal(
+      level,
+      pos,
+      axis,
+      ModConfig.get().exitPlacement(level.dimension()),
+      () -> definition.randomFrameBlock(level.getRandom()).defaultBlockState()
+    );
+    portal.ifPresent(rectangle -> CustomPortalRecords.get(level).add(CustomPortalRecord.of(rectangle, axis, dimension, context.exitOrigin(level.dimension()))));
+    return portal;
   }
 
   /**
-   * Modifies the second argument of the call to {@link ServerLevel#setBlockAndUpdate(BlockPos, BlockState)} inside the method {@link PortalForcer#createPortal(BlockPos, Axis)}.<br>
-   * Changes the original {@link BlockState} with the correct one.
+   * Fills in and commits the given {@link ExitPortalSearchEvent}, if enabled.
    *
-   * @param state block state.
-   * @return whether the {@link BlockState} has been set in the {@link ServerLevel}.
+   * @param event {@link ExitPortalSearchEvent}.
+   * @param exitPos exit position.
+   * @param linked Custom Dimension the exit portal should lead to, {@code null} for Vanilla searches.
+   * @param candidates amount of candidate exit portals examined by the search.
+   * @param portal closest exit portal, if any.
    */
-  @ModifyArg(method = "createPortal", at = @At(value = "INVOKE", target = "Lnet/minecraft/server/level/ServerLevel;setBlockAndUpdate(Lnet/minecraft/core/BlockPos;Lnet/minecraft/world/level/block/state/BlockState;)Z"), index = 1)
-  private BlockState redirectSetBlockStateNoFlags$createPortal(BlockState state) {
-    return getCorrectBlockState(state);
+  @Unique
+  private void commitSearchEvent(ExitPortalSearchEvent event, BlockPos exitPos, @Nullable ResourceKey<Level> linked, int candidates, Optional<BlockPos> portal) {
+    if (event.shouldCommit()) {
+      event.dimension = level.dimension().location().toString();
+      event.linked = linked == null ? "" : linked.location().toString();
+      event.x = exitPos.getX();
+      event.y = exitPos.getY();
+      event.z = exitPos.getZ();
+      event.candidates = candidates;
+      event.found = portal.isPresent();
+      event.result = portal.map(BlockPos::toShortString).orElse("");
+      event.commit();
+    }
   }
 
   /**
-   * Modifies the second argument of the call to {@link ServerLevel#setBlock(BlockPos, BlockState, int)} inside the method {@link PortalForcer#createPortal(BlockPos, Axis)}.<br>
-   * Changes the original {@link BlockState} with the correct one.
+   * Wraps the method {@link PortalForcer#findClosestPortalPosition(BlockPos, boolean, WorldBorder)}.<br>
+   * Emits an {@link ExitPortalSearchEvent}.
    *
-   * @param state block state.
-   * @return whether the {@link BlockState} has been set in the {@link ServerLevel}.
+   * @param exitPos exit position.
+   * @param isNether whether the destination is the Nether.
+   * @param worldBorder world border.
+   * @param original original method.
+   * @param searchCandidates amount of candidate exit portals examined by the search.
+   * @return closest exit portal, if any.
    */
-  @ModifyArg(method = "createPortal", at = @At(value = "INVOKE", target = "Lnet/minecraft/server/level/ServerLevel;setBlock(Lnet/minecraft/core/BlockPos;Lnet/minecraft/world/level/block/state/BlockState;I)Z", ordinal = 0), index = 1)
-  private BlockState redirectSetBlockStateWithFlags$createPortal(BlockState state) {
-    return getCorrectBlockState(state);
+  @WrapMethod(method = "findClosestPortalPosition")
+  private Optional<BlockPos> wrapFindClosestPortalPosition(BlockPos exitPos, boolean isNether, WorldBorder worldBorder, Operation<Optional<BlockPos>> original, @Share("searchCandidates") LocalIntRef searchCandidates) {
+    ExitPortalSearchEvent event = new ExitPortalSearchEvent();
+    event.begin();
+    Optional<BlockPos> portal = original.call(exitPos, isNether, worldBorder);
+    commitSearchEvent(event, exitPos, null, searchCandidates.get(), portal);
+    return portal;
   }
 
   /**
    * Redirects the call to {@link Stream#filter(Predicate)} inside the method {@link PortalForcer#findClosestPortalPosition(BlockPos, boolean, WorldBorder)}.<br>
-   * Adds a new condition to the predicate to prevent teleporting from Nether Portals to custom portals and vice versa.
+   * Adds a new condition to the predicate to prevent teleporting from Nether Portals to Custom Portals.<br>
+   * Custom Portal exits are searched by {@link CustomPortalForcer#findExitPortal(TeleportContext, BlockPos, boolean, WorldBorder)}, so the Vanilla
+   * search only ever looks for Nether Portals.
    *
    * @param instance stream of {@link BlockPos}s owning the redirected method.
    * @param predicate whether the portal is within bounds.
+   * @param searchCandidates amount of candidate exit portals examined by the search.
    * @return filtered stream of {@link BlockPos}s that represent matching portals.
    */
   @Redirect(method = "findClosestPortalPosition", at = @At(value = "INVOKE", target = "Ljava/util/stream/Stream;filter(Ljava/util/function/Predicate;)Ljava/util/stream/Stream;", ordinal = 1))
-  private Stream<BlockPos> redirectFilter(Stream<BlockPos> instance, Predicate<? super BlockPos> predicate) {
-    return instance.filter(pos -> predicate.test(pos) && (level.dimension() != Level.OVERWORLD || CustomPortalChecker.isPortalForDimension(level, pos, Constants.DIMENSION_ORIGIN_THREAD.get())));
+  private Stream<BlockPos> redirectFilter(Stream<BlockPos> instance, Predicate<? super BlockPos> predicate, @Share("searchCandidates") LocalIntRef searchCandidates) {
+    boolean verify = !CustomPortalRegistry.get(level.getServer()).isEmpty();
+    return instance.filter(pos -> {
+      searchCandidates.set(searchCandidates.get() + 1);
+      return predicate.test(pos) && (!verify || isPortalFor(pos, Level.NETHER));
+    });
+  }
+
+  /**
+   * Checks whether the portal at the given position is for the given dimension.<br>
+   * Never loads chunks: portals that can't be verified with the loaded ones are accepted whatever the dimension, so that no duplicate exit is built
+   * next to them.
+   *
+   * @param pos portal position.
+   * @param dimension dimension the portal should be for.
+   * @return whether the portal is for the given dimension.
+   */
+  @Unique
+  private boolean isPortalFor(BlockPos pos, ResourceKey<Level> dimension) {
+    if (PortalVerifier.verify(level, pos, dimension) != PortalVerifier.Result.MISMATCH) {
+      return true;
+    }
+    PortalMetrics.count(PortalMetrics.Metric.POI_REJECTED, dimension);
+    return false;
   }
 }
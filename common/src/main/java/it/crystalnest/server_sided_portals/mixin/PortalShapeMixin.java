@@ -1,20 +1,31 @@
 package it.crystalnest.server_sided_portals.mixin;
 
 import com.llamalad7.mixinextras.injector.ModifyReturnValue;
+import com.llamalad7.mixinextras.injector.wrapmethod.WrapMethod;
+import com.llamalad7.mixinextras.injector.wrapoperation.Operation;
 import it.crystalnest.server_sided_portals.api.CustomPortalChecker;
+import it.crystalnest.server_sided_portals.config.ModConfig;
+import it.crystalnest.server_sided_portals.portal.CustomPortalDefinition;
+import it.crystalnest.server_sided_portals.portal.CustomPortalLevel;
+import it.crystalnest.server_sided_portals.portal.CustomPortalMatcher;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRecord;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRecords;
+import it.crystalnest.server_sided_portals.portal.CustomPortalRegistry;
+import it.crystalnest.server_sided_portals.portal.CustomPortalShape;
+import it.crystalnest.server_sided_portals.portal.ExitPregenerator;
+import it.crystalnest.server_sided_portals.portal.PortalMetrics;
+import it.crystalnest.server_sided_portals.portal.PortalShapeCache;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.server.level.ServerLevel;
-import net.minecraft.tags.TagKey;
 import net.minecraft.world.level.BlockGetter;
 import net.minecraft.world.level.Level;
-import net.minecraft.world.level.block.Block;
-import net.minecraft.world.level.block.Blocks;
-import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.LevelAccessor;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
 import net.minecraft.world.level.portal.PortalShape;
-import org.apache.commons.lang3.mutable.MutableInt;
 import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.Final;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.Unique;
@@ -26,7 +37,7 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
  * Injects into {@link PortalShape} to alter dimension travel.
  */
 @Mixin(PortalShape.class)
-public abstract class PortalShapeMixin implements CustomPortalChecker {
+public abstract class PortalShapeMixin implements CustomPortalChecker, CustomPortalShape {
   /**
    * Whether the dimension has already been set and finalized.
    */
@@ -41,13 +52,56 @@ public abstract class PortalShapeMixin implements CustomPortalChecker {
   private ResourceKey<Level> dimension = Level.NETHER;
 
   /**
-   * Shadowed {@link PortalShape#isEmpty(BlockState)}.
-   *
-   * @return whether the block state is not a solid block.
+   * Shadowed {@link PortalShape#axis}.
+   */
+  @Final
+  @Shadow
+  private Direction.Axis axis;
+
+  /**
+   * Shadowed {@link PortalShape#bottomLeft}.
+   */
+  @Final
+  @Shadow
+  private BlockPos bottomLeft;
+
+  /**
+   * Shadowed {@link PortalShape#width}.
    */
+  @Final
   @Shadow
-  private static boolean isEmpty(BlockState state) {
-    throw new UnsupportedOperationException("Tried to call a dummy body of a shadowed method: PortalShape#isEmpty(BlockState)");
+  private int width;
+
+  /**
+   * Shadowed {@link PortalShape#height}.
+   */
+  @Final
+  @Shadow
+  private int height;
+
+  /**
+   * Wraps the method {@link PortalShape#findAnyShape(BlockGetter, BlockPos, Direction.Axis)}.<br>
+   * Answers from the {@link PortalShapeCache} of the dimension when possible.<br>
+   * Shapes are only cached when there are Custom Portals, otherwise the Vanilla scan is cheap enough and this adds no cost.
+   *
+   * @param level current dimension.
+   * @param pos initial position.
+   * @param axis portal orientation.
+   * @param original original method.
+   * @return cached or freshly computed {@link PortalShape}.
+   */
+  @WrapMethod(method = "findAnyShape")
+  private static PortalShape wrapFindAnyShape(BlockGetter level, BlockPos pos, Direction.Axis axis, Operation<PortalShape> original) {
+    if (level instanceof ServerLevel serverLevel && serverLevel.getServer().isSameThread() && !CustomPortalRegistry.get(serverLevel.getServer()).isEmpty()) {
+      PortalShapeCache cache = ((CustomPortalLevel) serverLevel).portalShapeCache();
+      PortalShape shape = cache.get(pos, axis);
+      if (shape == null) {
+        shape = original.call(level, pos, axis);
+        cache.put(pos, axis, shape);
+      }
+      return shape;
+    }
+    return original.call(level, pos, axis);
   }
 
   /**
@@ -62,42 +116,22 @@ public abstract class PortalShapeMixin implements CustomPortalChecker {
    */
   @ModifyReturnValue(method = "findAnyShape", at = @At(value = "RETURN"))
   private static PortalShape modifyFindAnyShape(PortalShape original, BlockGetter level, BlockPos pos, Direction.Axis axis) {
-    if (level instanceof ServerLevel serverLevel) {
+    CustomPortalRegistry registry;
+    if (level instanceof ServerLevel serverLevel && !(registry = CustomPortalRegistry.get(serverLevel.getServer())).isEmpty()) {
       Direction direction = axis == Direction.Axis.X ? Direction.WEST : Direction.SOUTH;
-      if (original.isValid() && CustomPortalChecker.hasCustomPortalFrame(serverLevel)) {
+      boolean inCustomDimension = registry.contains(serverLevel.dimension());
+      if (original.isValid() && inCustomDimension) {
         // If it's a Nether Portal, and we are in a Custom Dimension, prevent creating the portal.
         return new PortalShape(axis, 0, direction, pos, 0, 0);
       }
-      if (!original.isValid() && (serverLevel.dimension() == Level.OVERWORLD || CustomPortalChecker.hasCustomPortalFrame(serverLevel))) {
-        // If it's not a Nether Portal, and we are either in the Overworld or in a Custom Dimension, check whether it's a Custom Portal.
-        int width = 0;
-        BlockPos bottomLeft = null;
-        for (ResourceKey<Level> dimension : CustomPortalChecker.getDimensionsWithCustomPortal(serverLevel)) {
-          // A Custom Portal can light up only in the Overworld or in the Custom Dimension it is for.
-          if (serverLevel.dimension() == Level.OVERWORLD || dimension == serverLevel.dimension()) {
-            TagKey<Block> frameBlock = CustomPortalChecker.getCustomPortalFrameTag(dimension);
-            bottomLeft = calculateBottomLeftForCustomDimension(level, direction, pos, frameBlock);
-            if (bottomLeft != null) {
-              width = calculateWidthForCustomDimension(level, bottomLeft, direction, frameBlock);
-              if (width > 0) {
-                MutableInt portalBlocks = new MutableInt();
-                // The first Custom Dimension to match breaks the loop and validates the Custom Portal.
-                PortalShape portal = new PortalShape(axis, portalBlocks.getValue(), direction, bottomLeft, width, calculateHeightForCustomDimension(level, bottomLeft, direction, width, portalBlocks, frameBlock));
-                if (portal.isValid()) {
-                  ((CustomPortalChecker) portal).setDimension(dimension);
-                }
-                return portal;
-              }
-            }
-          }
-        }
-        // If, after checking all Custom Dimensions, the portal is not valid, prevent creating the portal.
-        if (bottomLeft == null) {
-          return new PortalShape(axis, 0, direction, pos, 0, 0);
-        }
-        if (width == 0) {
-          return new PortalShape(axis, 0, direction, bottomLeft, 0, 0);
-        }
+      long candidates = registry.lightableMask(serverLevel.dimension());
+      if (!original.isValid() && candidates != 0) {
+        // If it's not a Nether Portal, and some Custom Portal can light up here, check whether it's a Custom Portal.
+        // A Custom Portal can light up only in its origins, the Overworld by default, or in the Custom Dimension it is for.
+        long start = PortalMetrics.start();
+        PortalShape shape = CustomPortalMatcher.match(level, registry, pos, axis, candidates);
+        PortalMetrics.stop(PortalMetrics.Metric.SHAPE_SCAN, serverLevel.dimension(), start);
+        return shape;
       }
     }
     if (original.isValid()) {
@@ -107,153 +141,42 @@ public abstract class PortalShapeMixin implements CustomPortalChecker {
   }
 
   /**
-   * Copy-paste of {@link PortalShape#calculateBottomLeft(BlockGetter, Direction, BlockPos)}, changed to use the proper frame block(s).
-   *
-   * @param level current dimension.
-   * @param direction checking direction.
-   * @param pos initial position.
-   * @param frameBlock frame block tag.
-   * @return position of the bottom left corner.
-   */
-  @Unique
-  @Nullable
-  @SuppressWarnings({"ConstantValue", "StatementWithEmptyBody"})
-  private static BlockPos calculateBottomLeftForCustomDimension(BlockGetter level, Direction direction, BlockPos pos, TagKey<Block> frameBlock) {
-    for (int i = Math.max(level.getMinY(), pos.getY() - 21); pos.getY() > i && isEmpty(level.getBlockState(pos.below())); pos = pos.below()) ;
-    Direction dir = direction.getOpposite();
-    int j = getDistanceUntilEdgeAboveFrameForCustomDimension(level, pos, dir, frameBlock) - 1;
-    return j < 0 ? null : pos.relative(dir, j);
-  }
-
-  /**
-   * Copy-paste of {@link PortalShape#calculateWidth(BlockGetter, BlockPos, Direction)}, changed only to use the proper frame block(s).
-   *
-   * @param level current dimension.
-   * @param pos initial position.
-   * @param direction checking direction.
-   * @param frameBlock frame block tag.
-   * @return portal width.
-   */
-  @Unique
-  private static int calculateWidthForCustomDimension(BlockGetter level, BlockPos pos, Direction direction, TagKey<Block> frameBlock) {
-    int i = getDistanceUntilEdgeAboveFrameForCustomDimension(level, pos, direction, frameBlock);
-    return i >= 2 && i <= 21 ? i : 0;
-  }
-
-  /**
-   * Copy-paste of {@link PortalShape#getDistanceUntilEdgeAboveFrame(BlockGetter, BlockPos, Direction)}, changed only to use the proper frame block(s).
+   * Shadowed {@link PortalShape#isValid()}.
    *
-   * @param level current dimension.
-   * @param pos initial position.
-   * @param direction checking direction.
-   * @param frameBlock frame block tag.
-   * @return distance until frame edge.
+   * @return whether the portal is valid.
    */
-  @Unique
-  @SuppressWarnings("ConstantValue")
-  private static int getDistanceUntilEdgeAboveFrameForCustomDimension(BlockGetter level, BlockPos pos, Direction direction, TagKey<Block> frameBlock) {
-    BlockPos.MutableBlockPos mutablePos = new BlockPos.MutableBlockPos();
-    for (int i = 0; i <= 21; i++) {
-      BlockState state = level.getBlockState(mutablePos.set(pos).move(direction, i));
-      if (!isEmpty(state)) {
-        if (state.is(frameBlock)) {
-          return i;
-        }
-        break;
-      }
-      if (!level.getBlockState(mutablePos.move(Direction.DOWN)).is(frameBlock)) {
-        break;
-      }
-    }
-    return 0;
-  }
+  @Shadow
+  public abstract boolean isValid();
 
-  /**
-   * Copy-paste of {@link PortalShape#calculateHeight(BlockGetter, BlockPos, Direction, int, MutableInt)}, changed only to use the proper frame block(s).
-   *
-   * @param level current dimension.
-   * @param pos initial position.
-   * @param direction checking direction.
-   * @param width portal width.
-   * @param portalBlocks amount of portal blocks.
-   * @param frameBlock frame block tag.
-   * @return portal height.
-   */
-  @Unique
-  private static int calculateHeightForCustomDimension(BlockGetter level, BlockPos pos, Direction direction, int width, MutableInt portalBlocks, TagKey<Block> frameBlock) {
-    BlockPos.MutableBlockPos mutablePos = new BlockPos.MutableBlockPos();
-    int i = getDistanceUntilTopForCustomDimension(level, pos, direction, mutablePos, width, portalBlocks, frameBlock);
-    return i >= 3 && i <= 21 && hasTopFrameForCustomDimension(level, pos, direction, mutablePos, width, i, frameBlock) ? i : 0;
+  @Nullable
+  @Override
+  public CustomPortalRecord toRecord(ResourceKey<Level> level) {
+    return isValid() && CustomPortalChecker.hasCustomPortalFrame(dimension) ? createRecord(level) : null;
   }
 
-  /**
-   * Copy-paste of {@link PortalShape#getDistanceUntilTop(BlockGetter, BlockPos, Direction, BlockPos.MutableBlockPos, int, MutableInt)}, changed only to use the proper frame block(s).
-   *
-   * @param level current dimension.
-   * @param pos initial position.
-   * @param direction checking direction.
-   * @param checkPos current position.
-   * @param width portal width.
-   * @param portalBlocks amount of portal blocks.
-   * @param frameBlock frame block tag.
-   * @return distance until frame top.
-   */
-  @Unique
-  private static int getDistanceUntilTopForCustomDimension(BlockGetter level, BlockPos pos, Direction direction, BlockPos.MutableBlockPos checkPos, int width, MutableInt portalBlocks, TagKey<Block> frameBlock) {
-    for (int i = 0; i < 21; i++) {
-      checkPos.set(pos).move(Direction.UP, i).move(direction, -1);
-      if (!level.getBlockState(checkPos).is(frameBlock)) {
-        return i;
-      }
-      checkPos.set(pos).move(Direction.UP, i).move(direction, width);
-      if (!level.getBlockState(checkPos).is(frameBlock)) {
-        return i;
-      }
-      for (int j = 0; j < width; ++j) {
-        checkPos.set(pos).move(Direction.UP, i).move(direction, j);
-        BlockState blockstate = level.getBlockState(checkPos);
-        if (!isEmpty(blockstate)) {
-          return i;
-        }
-        if (blockstate.is(Blocks.NETHER_PORTAL)) {
-          portalBlocks.increment();
-        }
-      }
-    }
-    return 21;
+  @Override
+  public BoundingBox frameBounds() {
+    // The origin plays no part in the bounds.
+    return createRecord(dimension).frameBounds();
   }
 
   /**
-   * Copy-paste of {@link PortalShape#hasTopFrame(BlockGetter, BlockPos, Direction, BlockPos.MutableBlockPos, int, int)}, changed only to use the proper frame block(s).
+   * Creates the {@link CustomPortalRecord} describing this portal, whether it is a valid Custom Portal or not.<br>
+   * Portals lit in their Custom Dimension lead back to the {@link CustomPortalDefinition#defaultOrigin() default origin} of their definition.
    *
-   * @param level current dimension.
-   * @param pos initial position.
-   * @param direction checking direction.
-   * @param checkPos current position.
-   * @param width portal width.
-   * @param distanceUntilTop distance until frame top.
-   * @param frameBlock frame block tag.
-   * @return whether the frame has a top.
+   * @param level dimension the portal is in.
+   * @return the record.
    */
   @Unique
-  private static boolean hasTopFrameForCustomDimension(BlockGetter level, BlockPos pos, Direction direction, BlockPos.MutableBlockPos checkPos, int width, int distanceUntilTop, TagKey<Block> frameBlock) {
-    for (int i = 0; i < width; ++i) {
-      BlockPos.MutableBlockPos mutablePos = checkPos.set(pos).move(Direction.UP, distanceUntilTop).move(direction, i);
-      if (!level.getBlockState(mutablePos).is(frameBlock)) {
-        return false;
-      }
+  private CustomPortalRecord createRecord(ResourceKey<Level> level) {
+    ResourceKey<Level> origin = level;
+    if (level == dimension) {
+      CustomPortalDefinition definition = CustomPortalRegistry.get().definition(dimension);
+      origin = definition == null ? Level.OVERWORLD : definition.defaultOrigin();
     }
-    return true;
+    return new CustomPortalRecord(bottomLeft.immutable(), axis, width, height, dimension, origin);
   }
 
-  /**
-   * Shadowed {@link PortalShape#isValid()}.
-   *
-   * @return whether the portal is valid.
-   */
-  @Shadow
-  public abstract boolean isValid();
-
   @Override
   public ResourceKey<Level> dimension() {
     return dimension;
@@ -287,4 +210,44 @@ public abstract class PortalShapeMixin implements CustomPortalChecker {
       setDimension(Level.NETHER);
     }
   }
+
+  /**
+   * Wraps the method {@link PortalShape#createPortalBlocks(LevelAccessor)}.<br>
+   * Fills Custom Portals in bulk: the {@link PortalShapeCache} is invalidated once for the whole portal instead of once per placed block, and shape
+   * lookups touching the portal while it is being filled are never answered from the cache.
+   *
+   * @param level dimension.
+   * @param original original method.
+   */
+  @WrapMethod(method = "createPortalBlocks")
+  private void wrapCreatePortalBlocks(LevelAccessor level, Operation<Void> original) {
+    if (level instanceof ServerLevel serverLevel && serverLevel.getServer().isSameThread() && isValid() && CustomPortalChecker.hasCustomPortalFrame(dimension)) {
+      ((CustomPortalLevel) serverLevel).portalShapeCache().fill(frameBounds(), () -> original.call(level));
+    } else {
+      original.call(level);
+    }
+  }
+
+  /**
+   * Injects at the end of the method {@link PortalShape#createPortalBlocks(LevelAccessor)}.<br>
+   * Records the lit Custom Portal, or clears any stale record where a Nether Portal has been lit.<br>
+   * Schedules the pregeneration of the exit of the lit Custom Portal if enabled.
+   *
+   * @param level dimension.
+   * @param ci {@link CallbackInfo}.
+   */
+  @Inject(method = "createPortalBlocks", at = @At(value = "TAIL"))
+  private void onCreatePortalBlocks(LevelAccessor level, CallbackInfo ci) {
+    if (level instanceof ServerLevel serverLevel && !CustomPortalRegistry.get(serverLevel.getServer()).isEmpty()) {
+      CustomPortalRecord record = toRecord(serverLevel.dimension());
+      if (record != null) {
+        CustomPortalRecords.get(serverLevel).add(record);
+        if (ModConfig.get().pregenerateExits()) {
+          ExitPregenerator.schedule(serverLevel, record);
+        }
+      } else if (isValid()) {
+        CustomPortalRecords.get(serverLevel).removeOverlapping(createRecord(serverLevel.dimension()));
+      }
+    }
+  }
 }
@@ -0,0 +1,78 @@
+package it.crystalnest.server_sided_portals.mixin;
+
+import it.crystalnest.server_sided_portals.portal.CustomPortalLevel;
+import it.crystalnest.server_sided_portals.portal.IgnitionQueue;
+import it.crystalnest.server_sided_portals.portal.PortalShapeCache;
+import it.crystalnest.server_sided_portals.portal.PortalTransitMemo;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Injects into {@link ServerLevel} to keep the Custom Portal state of each dimension up to date.
+ */
+@Mixin(ServerLevel.class)
+public abstract class ServerLevelMixin implements CustomPortalLevel {
+  /**
+   * {@link PortalShapeCache} of this dimension.
+   */
+  @Unique
+  private final PortalShapeCache portalShapeCache = new PortalShapeCache();
+
+  /**
+   * {@link PortalTransitMemo} of this dimension.
+   */
+  @Unique
+  private final PortalTransitMemo portalTransitMemo = new PortalTransitMemo();
+
+  /**
+   * {@link IgnitionQueue} of this dimension.
+   */
+  @Unique
+  private final IgnitionQueue ignitionQueue = new IgnitionQueue();
+
+  @Override
+  public PortalShapeCache portalShapeCache() {
+    return portalShapeCache;
+  }
+
+  @Override
+  public PortalTransitMemo portalTransitMemo() {
+    return portalTransitMemo;
+  }
+
+  @Override
+  public IgnitionQueue ignitionQueue() {
+    return ignitionQueue;
+  }
+
+  /**
+   * Injects at the end of the method {@link ServerLevel#tick(BooleanSupplier)}.<br>
+   * Makes the ignition attempts deferred by the {@link IgnitionQueue}, within the budget left for this tick.
+   *
+   * @param hasTimeLeft whether the server has time left for this tick.
+   * @param ci {@link CallbackInfo}.
+   */
+  @Inject(method = "tick", at = @At(value = "TAIL"))
+  private void onTick(BooleanSupplier hasTimeLeft, CallbackInfo ci) {
+    ignitionQueue.drain((ServerLevel) (Object) this);
+  }
+
+  /**
+   * Injects at the start of the method {@link ServerLevel#unload(LevelChunk)}.<br>
+   * Invalidates the cached portal shapes depending on the unloaded chunk.
+   *
+   * @param chunk unloaded chunk.
+   * @param ci {@link CallbackInfo}.
+   */
+  @Inject(method = "unload", at = @At(value = "HEAD"))
+  private void onUnload(LevelChunk chunk, CallbackInfo ci) {
+    portalShapeCache.invalidate(chunk.getPos(), chunk.getMinSectionY(), chunk.getMaxSectionY());
+  }
+}
@@ -1,9 +1,12 @@
 package it.crystalnest.server_sided_portals.platform;
 
 import it.crystalnest.server_sided_portals.Constants;
+import it.crystalnest.server_sided_portals.api.PortalDestinationResolver;
 import it.crystalnest.server_sided_portals.platform.services.PlatformHelper;
 
+import java.util.Comparator;
 import java.util.ServiceLoader;
+import java.util.function.ToIntFunction;
 
 /**
  * Service loaders are a built-in Java feature that allow us to locate implementations of an interface that vary from one environment to another.
@@ -15,6 +18,11 @@ public final class Services {
    */
   public static final PlatformHelper PLATFORM = load(PlatformHelper.class);
 
+  /**
+   * Decides where entities travelling through Custom Portals go, the available implementation with the highest priority.
+   */
+  public static final PortalDestinationResolver PORTAL_DESTINATION = loadHighestPriority(PortalDestinationResolver.class, PortalDestinationResolver::priority);
+
   private Services() {}
 
   /**
@@ -31,4 +39,18 @@ public final class Services {
     Constants.LOGGER.debug("Loaded {} for service {}", loadedService, clazz);
     return loadedService;
   }
+
+  /**
+   * Load the implementation with the highest priority among all the available ones of a service.
+   *
+   * @param clazz Class to load.
+   * @param priority Priority of an implementation.
+   * @return The loaded service.
+   * @param <T> class type.
+   */
+  private static <T> T loadHighestPriority(Class<T> clazz, ToIntFunction<T> priority) {
+    final T loadedService = ServiceLoader.load(clazz).stream().map(ServiceLoader.Provider::get).max(Comparator.comparingInt(priority)).orElseThrow(() -> new NullPointerException("Failed to load service for " + clazz.getName()));
+    Constants.LOGGER.debug("Loaded {} for service {}", loadedService, clazz);
+    return loadedService;
+  }
 }
@@ -3,6 +3,8 @@ package it.crystalnest.server_sided_portals.platform.services;
 import it.crystalnest.cobweb.platform.model.Environment;
 import it.crystalnest.cobweb.platform.model.Platform;
 
+import java.nio.file.Path;
+
 /**
  * Platform specific helper.
  */
@@ -29,6 +31,13 @@ public interface PlatformHelper {
    */
   boolean isDevEnv();
 
+  /**
+   * Gets the directory holding the configuration files.
+   *
+   * @return The configuration directory.
+   */
+  Path getConfigDir();
+
   /**
    * Gets the name of the environment type as a string.
    *
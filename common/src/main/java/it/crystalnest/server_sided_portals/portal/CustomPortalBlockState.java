@@ -0,0 +1,16 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * Internal view of a {@link BlockState} caching its global id.
+ */
+public interface CustomPortalBlockState {
+  /**
+   * Global id of this block state, same as {@link Block#getId(BlockState)} without the registry lookup.
+   *
+   * @return global id of this block state, {@code -1} if it is not registered.
+   */
+  int portalStateId();
+}
@@ -0,0 +1,92 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import net.minecraft.core.Holder;
+import net.minecraft.core.HolderSet;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.tags.TagKey;
+import net.minecraft.util.RandomSource;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Resolved definition of a Custom Portal.
+ *
+ * @param index position of this definition in its {@link CustomPortalRegistry}, used as its bit in dimension masks.
+ * @param dimension Custom Dimension the portal leads to.
+ * @param frameTag Block Tag for the Custom Portal Frame.
+ * @param igniterTag Item Tag for the Custom Portal Igniter.
+ * @param frameBlocks resolved Custom Portal Frame blocks.
+ * @param igniterItems resolved Custom Portal Igniter items, empty if the dimension has no Custom Portal Igniter.
+ * @param minWidth minimum portal width.
+ * @param maxWidth maximum portal width.
+ * @param minHeight minimum portal height.
+ * @param maxHeight maximum portal height.
+ * @param origins dimensions, other than the Custom Dimension itself, where the portal can be lit, the first one being the {@link #defaultOrigin() default origin}.
+ * @param litByFire whether fire lights the portal.
+ */
+public record CustomPortalDefinition(
+  int index,
+  ResourceKey<Level> dimension,
+  TagKey<Block> frameTag,
+  TagKey<Item> igniterTag,
+  HolderSet.Named<Block> frameBlocks,
+  Optional<HolderSet.Named<Item>> igniterItems,
+  int minWidth,
+  int maxWidth,
+  int minHeight,
+  int maxHeight,
+  List<ResourceKey<Level>> origins,
+  boolean litByFire
+) {
+  /**
+   * Dimension mask with only this definition set.
+   *
+   * @return dimension mask of this definition.
+   */
+  public long mask() {
+    return 1L << index;
+  }
+
+  /**
+   * Whether this Custom Portal has a Custom Portal Igniter item.
+   *
+   * @return whether this Custom Portal has a Custom Portal Igniter item.
+   */
+  public boolean hasIgniter() {
+    return igniterItems.isPresent();
+  }
+
+  /**
+   * Dimension portals lit in the Custom Dimension itself lead back to, the first origin or the Overworld if there is none.
+   *
+   * @return default origin dimension key.
+   */
+  public ResourceKey<Level> defaultOrigin() {
+    return origins.isEmpty() ? Level.OVERWORLD : origins.get(0);
+  }
+
+  /**
+   * Picks a random Custom Portal Frame block.
+   *
+   * @param random random source.
+   * @return a random Custom Portal Frame block, {@link Blocks#OBSIDIAN} if the tag is empty.
+   */
+  public Block randomFrameBlock(RandomSource random) {
+    return frameBlocks.getRandomElement(random).map(Holder::value).orElse(Blocks.OBSIDIAN);
+  }
+
+  /**
+   * Whether the portal can be lit in the given dimension.
+   *
+   * @param level dimension key.
+   * @return whether the portal can be lit in the given dimension.
+   */
+  public boolean canLightIn(ResourceKey<Level> level) {
+    return level == dimension || origins.contains(level);
+  }
+}
@@ -0,0 +1,37 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import net.minecraft.BlockUtil;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.border.WorldBorder;
+import net.minecraft.world.level.portal.PortalForcer;
+
+import java.util.Optional;
+
+/**
+ * Internal view of a {@link PortalForcer} that searches and creates exit portals for a given travel.
+ */
+public interface CustomPortalForcer {
+  /**
+   * Same as {@link PortalForcer#findClosestPortalPosition(BlockPos, boolean, WorldBorder)}, for the travel described by the given {@link TeleportContext}.<br>
+   * Custom Portal exits are looked up among the recorded Custom Portals first, other travels run the Vanilla search.
+   *
+   * @param context {@link TeleportContext}.
+   * @param exitPos exit position.
+   * @param isNether whether the destination is the Nether.
+   * @param worldBorder world border.
+   * @return closest exit portal, if any.
+   */
+  Optional<BlockPos> findExitPortal(TeleportContext context, BlockPos exitPos, boolean isNether, WorldBorder worldBorder);
+
+  /**
+   * Same as {@link PortalForcer#createPortal(BlockPos, Direction.Axis)}, for the travel described by the given {@link TeleportContext}.<br>
+   * Custom Portal exits are built with the frame blocks of the Custom Portal and recorded, other travels run the Vanilla creation.
+   *
+   * @param context {@link TeleportContext}.
+   * @param pos exit position.
+   * @param axis portal orientation.
+   * @return created portal, if any.
+   */
+  Optional<BlockUtil.FoundRectangle> createExitPortal(TeleportContext context, BlockPos pos, Direction.Axis axis);
+}
@@ -0,0 +1,29 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import net.minecraft.server.level.ServerLevel;
+
+/**
+ * Internal view of a {@link ServerLevel} holding its Custom Portal state.
+ */
+public interface CustomPortalLevel {
+  /**
+   * {@link PortalShapeCache} of this dimension.
+   *
+   * @return {@link PortalShapeCache}.
+   */
+  PortalShapeCache portalShapeCache();
+
+  /**
+   * {@link PortalTransitMemo} of this dimension.
+   *
+   * @return {@link PortalTransitMemo}.
+   */
+  PortalTransitMemo portalTransitMemo();
+
+  /**
+   * {@link IgnitionQueue} of this dimension.
+   *
+   * @return {@link IgnitionQueue}.
+   */
+  IgnitionQueue ignitionQueue();
+}
@@ -0,0 +1,197 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import it.crystalnest.server_sided_portals.Constants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.Mth;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.saveddata.SavedData;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Persistent table pairing each Custom Portal with the exit portal it leads to, in both directions.<br>
+ * Filled in when an entity first travels through a Custom Portal, or when its exit gets built, so that later travels skip the exit portal search.<br>
+ * Links are dropped when either portal breaks, and double-checked against the {@link CustomPortalRecords} of both dimensions before being used.<br>
+ * Stored with the Overworld, as links span dimensions.<br>
+ * Not thread safe, must only be used from the server thread.
+ */
+public final class CustomPortalLinks extends SavedData {
+  /**
+   * Name of the saved data file.
+   */
+  private static final String NAME = Constants.MOD_ID + "_links";
+
+  /**
+   * {@link SavedData.Factory} for this saved data.
+   */
+  private static final SavedData.Factory<CustomPortalLinks> FACTORY = new SavedData.Factory<>(CustomPortalLinks::new, CustomPortalLinks::load, null);
+
+  /**
+   * Exit portal of each linked portal, every link is present in both directions.
+   */
+  private final Map<End, End> links = new HashMap<>();
+
+  /**
+   * Returns the Custom Portal links of the given server.
+   *
+   * @param server Minecraft server.
+   * @return Custom Portal links.
+   */
+  public static CustomPortalLinks get(MinecraftServer server) {
+    return server.overworld().getDataStorage().computeIfAbsent(FACTORY, NAME);
+  }
+
+  /**
+   * Loads the links from the saved data.
+   *
+   * @param tag saved data.
+   * @param provider registries lookup.
+   * @return loaded links.
+   */
+  private static CustomPortalLinks load(CompoundTag tag, HolderLookup.Provider provider) {
+    CustomPortalLinks links = new CustomPortalLinks();
+    for (Tag entry : tag.getList("links", Tag.TAG_COMPOUND)) {
+      End from = End.load(((CompoundTag) entry).getCompound("from"));
+      End to = End.load(((CompoundTag) entry).getCompound("to"));
+      if (from != null && to != null) {
+        links.links.put(from, to);
+        links.links.put(to, from);
+      }
+    }
+    return links;
+  }
+
+  @Override
+  public CompoundTag save(CompoundTag tag, HolderLookup.Provider provider) {
+    ListTag list = new ListTag();
+    Set<End> saved = new HashSet<>();
+    links.forEach((from, to) -> {
+      if (saved.add(from) && saved.add(to)) {
+        CompoundTag entry = new CompoundTag();
+        entry.put("from", from.save());
+        entry.put("to", to.save());
+        list.add(entry);
+      }
+    });
+    tag.put("links", list);
+    return tag;
+  }
+
+  /**
+   * Finds the exit portal linked to the given portal.<br>
+   * Drops the link if the exit portal no longer exists.
+   *
+   * @param level dimension of the entrance portal.
+   * @param entrance entrance portal.
+   * @param destination dimension of the exit portal.
+   * @param exitPos position the exit should be as close as possible to.
+   * @return the closest block of the linked exit portal to the given position, if any.
+   */
+  public Optional<BlockPos> findExit(ServerLevel level, CustomPortalRecord entrance, ServerLevel destination, BlockPos exitPos) {
+    End exit = links.get(new End(level.dimension(), entrance));
+    if (exit == null || exit.level() != destination.dimension()) {
+      return Optional.empty();
+    }
+    CustomPortalRecord portal = exit.portal();
+    BlockPos pos = new BlockPos(
+      Mth.clamp(exitPos.getX(), portal.minX(), portal.maxX()),
+      Mth.clamp(exitPos.getY(), portal.minY(), portal.maxY()),
+      Mth.clamp(exitPos.getZ(), portal.minZ(), portal.maxZ())
+    );
+    if (portal.equals(CustomPortalRecords.get(destination).find(pos)) && destination.getBlockState(pos).is(Blocks.NETHER_PORTAL)) {
+      return Optional.of(pos);
+    }
+    unlink(level.dimension(), entrance);
+    return Optional.empty();
+  }
+
+  /**
+   * Links the two given portals, replacing any previous link of either.
+   *
+   * @param level dimension of the entrance portal.
+   * @param entrance entrance portal.
+   * @param destination dimension of the exit portal.
+   * @param exit exit portal.
+   */
+  public void link(ResourceKey<Level> level, CustomPortalRecord entrance, ResourceKey<Level> destination, CustomPortalRecord exit) {
+    End from = new End(level, entrance);
+    End to = new End(destination, exit);
+    if (!to.equals(links.get(from)) || !from.equals(links.get(to))) {
+      unlink(from);
+      unlink(to);
+      links.put(from, to);
+      links.put(to, from);
+      setDirty();
+    }
+  }
+
+  /**
+   * Drops the link of the given portal, if any.
+   *
+   * @param level dimension of the portal.
+   * @param portal portal.
+   */
+  public void unlink(ResourceKey<Level> level, CustomPortalRecord portal) {
+    unlink(new End(level, portal));
+  }
+
+  /**
+   * Drops the link of the given portal, if any.
+   *
+   * @param end portal.
+   */
+  private void unlink(End end) {
+    End other = links.remove(end);
+    if (other != null) {
+      links.remove(other, end);
+      setDirty();
+    }
+  }
+
+  /**
+   * A linked portal.
+   *
+   * @param level dimension of the portal.
+   * @param portal portal.
+   */
+  private record End(ResourceKey<Level> level, CustomPortalRecord portal) {
+    /**
+     * Saves this end into a {@link CompoundTag}.
+     *
+     * @return saved end.
+     */
+    private CompoundTag save() {
+      CompoundTag tag = portal.save();
+      tag.putString("level", level.location().toString());
+      return tag;
+    }
+
+    /**
+     * Loads an end from a {@link CompoundTag}.
+     *
+     * @param tag saved end.
+     * @return loaded end or {@code null} if the saved data is malformed.
+     */
+    @Nullable
+    private static End load(CompoundTag tag) {
+      ResourceLocation level = ResourceLocation.tryParse(tag.getString("level"));
+      CustomPortalRecord portal = CustomPortalRecord.load(tag);
+      return level == null || portal == null ? null : new End(ResourceKey.create(Registries.DIMENSION, level), portal);
+    }
+  }
+}
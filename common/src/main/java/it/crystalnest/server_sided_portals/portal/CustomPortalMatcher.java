@@ -0,0 +1,368 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import it.crystalnest.server_sided_portals.api.CustomPortalChecker;
+import jdk.jfr.EventType;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.core.SectionPos;
+import net.minecraft.tags.BlockTags;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.LevelReader;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.portal.PortalShape;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Matches Custom Portal Frames against all Custom Portal definitions at once.<br>
+ * Mirrors the scan of {@link PortalShape#findAnyShape(BlockGetter, BlockPos, Direction.Axis)}, but instead of checking a single frame block it
+ * keeps a mask of the definitions whose frame tag is satisfied by every frame block read so far.<br>
+ * Each block of the candidate frame is read once, regardless of how many Custom Dimensions there are.<br>
+ * Size limits of each definition are checked through the width and height masks precomputed by the {@link CustomPortalRegistry}.<br>
+ * Blocks are read straight from the current chunk section, which stays cached while the scan walks through it.<br>
+ * Matchers are reused by each thread and scans only allocate the resulting {@link PortalShape} and its bottom left corner, plus a
+ * {@link PortalShapeEvent} while it is being recorded.
+ */
+public final class CustomPortalMatcher {
+  /**
+   * Maximum portal width and height, same as {@link PortalShape}.
+   */
+  public static final int MAX_SIZE = 21;
+
+  /**
+   * Minimum portal width, same as {@link PortalShape}.
+   */
+  public static final int MIN_WIDTH = 2;
+
+  /**
+   * Minimum portal height, same as {@link PortalShape}.
+   */
+  public static final int MIN_HEIGHT = 3;
+
+  /**
+   * Matcher of each thread.
+   */
+  private static final ThreadLocal<CustomPortalMatcher> MATCHER = ThreadLocal.withInitial(CustomPortalMatcher::new);
+
+  /**
+   * {@link EventType} of {@link PortalShapeEvent}, to allocate events only while they are being recorded.
+   */
+  private static final EventType EVENT_TYPE = EventType.getEventType(PortalShapeEvent.class);
+
+  /**
+   * Reusable position, for the slow path.
+   */
+  private final BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+
+  /**
+   * Dimension to read blocks from, {@code null} while the matcher is not in use.
+   */
+  @Nullable
+  private BlockGetter level = null;
+
+  /**
+   * {@link #level} when blocks can be read directly from its chunks, {@code null} otherwise.
+   */
+  @Nullable
+  private LevelReader reader = null;
+
+  /**
+   * Custom Portal registry providing the frame masks.
+   */
+  private CustomPortalRegistry registry = CustomPortalRegistry.EMPTY;
+
+  /**
+   * Cached chunk, {@code null} if none has been read yet.
+   */
+  @Nullable
+  private ChunkAccess chunk = null;
+
+  /**
+   * X of the cached chunk.
+   */
+  private int chunkX;
+
+  /**
+   * Z of the cached chunk.
+   */
+  private int chunkZ;
+
+  /**
+   * Cached section of the cached chunk, {@code null} if none has been read yet.
+   */
+  @Nullable
+  private LevelChunkSection section = null;
+
+  /**
+   * Y of the cached section.
+   */
+  private int sectionY;
+
+  /**
+   * Mask of the definitions still matching after the last edge walk.
+   */
+  private long mask;
+
+  /**
+   * Definition matched by the ongoing scan, {@code null} if none matched.
+   */
+  @Nullable
+  private CustomPortalDefinition matched = null;
+
+  /**
+   * Amount of block states read by the ongoing scan.
+   */
+  private int reads;
+
+  private CustomPortalMatcher() {}
+
+  /**
+   * Finds the Custom Portal shape at the given position among the given candidate definitions.<br>
+   * When the frame is valid for more than one definition, the one that comes first in the registry wins.<br>
+   * When mixins are applied, the {@link PortalShape} is bound to the {@link CustomPortalChecker#dimension() dimension} of the matching definition.
+   *
+   * @param level current dimension.
+   * @param registry Custom Portal registry.
+   * @param pos initial position.
+   * @param axis portal orientation.
+   * @param candidates mask of the definitions to match against.
+   * @return {@link PortalShape}, valid if any definition matched.
+   */
+  public static PortalShape match(BlockGetter level, CustomPortalRegistry registry, BlockPos pos, Direction.Axis axis, long candidates) {
+    CustomPortalMatcher matcher = MATCHER.get();
+    if (matcher.level != null) {
+      // Reentrant scan, e.g. triggered while loading a chunk, don't clobber the ongoing one.
+      matcher = new CustomPortalMatcher();
+    }
+    matcher.level = level;
+    matcher.reader = level instanceof LevelReader levelReader && !(level instanceof Level world && world.isDebug()) ? levelReader : null;
+    matcher.registry = registry;
+    matcher.reads = 0;
+    matcher.matched = null;
+    PortalShapeEvent event = null;
+    if (EVENT_TYPE.isEnabled()) {
+      event = new PortalShapeEvent();
+      event.begin();
+    }
+    try {
+      PortalShape shape = matcher.match(pos, axis, candidates);
+      if (matcher.matched != null && shape instanceof CustomPortalChecker checker) {
+        checker.setDimension(matcher.matched.dimension());
+      }
+      return shape;
+    } finally {
+      if (event != null && event.shouldCommit()) {
+        event.dimension = level instanceof Level world ? world.dimension().location().toString() : "";
+        event.x = pos.getX();
+        event.y = pos.getY();
+        event.z = pos.getZ();
+        event.axis = axis.getName();
+        event.candidates = Long.bitCount(candidates);
+        event.blocksRead = matcher.reads;
+        event.matched = matcher.matched != null ? matcher.matched.dimension().location().toString() : "";
+        event.commit();
+      }
+      // Don't keep the dimension or its chunks reachable from the thread.
+      matcher.level = null;
+      matcher.reader = null;
+      matcher.registry = CustomPortalRegistry.EMPTY;
+      matcher.chunk = null;
+      matcher.section = null;
+      matcher.matched = null;
+    }
+  }
+
+  /**
+   * Same as {@link PortalShape#isEmpty(BlockState)}.
+   *
+   * @param state block state.
+   * @return whether the block state can be part of the portal interior.
+   */
+  public static boolean isEmpty(BlockState state) {
+    return state.isAir() || state.is(BlockTags.FIRE) || state.is(Blocks.NETHER_PORTAL);
+  }
+
+  /**
+   * Finds the Custom Portal shape at the given position among the given candidate definitions, leaving the matching one in {@link #matched}.
+   *
+   * @param pos initial position.
+   * @param axis portal orientation.
+   * @param candidates mask of the definitions to match against.
+   * @return {@link PortalShape}.
+   */
+  private PortalShape match(BlockPos pos, Direction.Axis axis, long candidates) {
+    Direction direction = axis == Direction.Axis.X ? Direction.WEST : Direction.SOUTH;
+    int dx = direction.getStepX();
+    int dz = direction.getStepZ();
+    int x = pos.getX();
+    int y = pos.getY();
+    int z = pos.getZ();
+    // Drop down to the bottom of the portal interior.
+    for (int minY = Math.max(level.getMinY(), y - MAX_SIZE); y > minY && isEmpty(state(x, y - 1, z)); y--) ;
+    // Walk towards the left edge, then back towards the right edge, narrowing down the candidates.
+    int distance = edge(x, y, z, -dx, -dz, candidates) - 1;
+    if (distance < 0) {
+      return new PortalShape(axis, 0, direction, pos, 0, 0);
+    }
+    x -= dx * distance;
+    z -= dz * distance;
+    int width = edge(x, y, z, dx, dz, mask);
+    // Keep only the candidates allowing this width.
+    long sized = width < MIN_WIDTH || width > MAX_SIZE ? 0 : mask & registry.widthMask(width);
+    if (sized == 0) {
+      return new PortalShape(axis, 0, direction, new BlockPos(x, y, z), 0, 0);
+    }
+    return height(axis, direction, x, y, z, width, sized);
+  }
+
+  /**
+   * Walks the bottom row of the portal interior until the edge, narrowing down the candidates on the frame below it and on the edge itself.<br>
+   * Mirrors {@link PortalShape#getDistanceUntilEdgeAboveFrame(BlockGetter, BlockPos, Direction)}, and leaves the surviving candidates in {@link #mask}.
+   *
+   * @param x initial X.
+   * @param y initial Y.
+   * @param z initial Z.
+   * @param dx X step.
+   * @param dz Z step.
+   * @param candidates mask of the candidate definitions.
+   * @return distance to the edge, {@code 0} if no candidate frame reaches it.
+   */
+  private int edge(int x, int y, int z, int dx, int dz, long candidates) {
+    mask = candidates;
+    for (int i = 0; i <= MAX_SIZE && mask != 0; i++) {
+      BlockState state = state(x + dx * i, y, z + dz * i);
+      if (!isEmpty(state)) {
+        mask &= registry.frameMask(state);
+        return mask == 0 ? 0 : i;
+      }
+      mask &= registry.frameMask(state(x + dx * i, y - 1, z + dz * i));
+    }
+    mask = 0;
+    return 0;
+  }
+
+  /**
+   * Walks the portal interior row by row, narrowing down the candidates on each side of the frame, then checks the top frame of each candidate where its sides end.<br>
+   * Mirrors {@link PortalShape#calculateHeight(BlockGetter, BlockPos, Direction, int, org.apache.commons.lang3.mutable.MutableInt)}.
+   *
+   * @param axis portal orientation.
+   * @param direction building direction.
+   * @param x bottom left X.
+   * @param bottom bottom left Y.
+   * @param z bottom left Z.
+   * @param width portal width.
+   * @param candidates mask of the candidate definitions.
+   * @return {@link PortalShape}.
+   */
+  private PortalShape height(Direction.Axis axis, Direction direction, int x, int bottom, int z, int width, long candidates) {
+    int dx = direction.getStepX();
+    int dz = direction.getStepZ();
+    int first = Long.numberOfTrailingZeros(candidates);
+    long alive = candidates;
+    int portalBlocks = 0;
+    int best = Long.SIZE;
+    int bestHeight = 0;
+    int bestPortalBlocks = 0;
+    for (int i = 0; i <= MAX_SIZE && alive != 0 && best != first; i++) {
+      int y = bottom + i;
+      long sideEnded = alive;
+      long interiorEnded = 0;
+      int rowPortalBlocks = portalBlocks;
+      if (i < MAX_SIZE) {
+        alive &= registry.frameMask(state(x - dx, y, z - dz));
+        alive &= registry.frameMask(state(x + dx * width, y, z + dz * width));
+        sideEnded &= ~alive;
+        for (int j = 0; j < width && alive != 0; j++) {
+          BlockState state = state(x + dx * j, y, z + dz * j);
+          if (!isEmpty(state)) {
+            // This row is not part of the interior, every frame still standing ends here.
+            interiorEnded = alive;
+            alive = 0;
+          } else if (state.is(Blocks.NETHER_PORTAL)) {
+            rowPortalBlocks++;
+          }
+        }
+      } else {
+        alive = 0;
+      }
+      if (i >= MIN_HEIGHT && (sideEnded | interiorEnded) != 0) {
+        long top = top(x, y, z, dx, dz, width, (sideEnded | interiorEnded) & registry.heightMask(i));
+        // Same count as vanilla: frames ending on their sides stop before reading this row, frames ending inside it count what was read.
+        int sideBest = Long.numberOfTrailingZeros(sideEnded & top);
+        int interiorBest = Long.numberOfTrailingZeros(interiorEnded & top);
+        if (sideBest < best && sideBest < interiorBest) {
+          best = sideBest;
+          bestHeight = i;
+          bestPortalBlocks = portalBlocks;
+        } else if (interiorBest < best) {
+          best = interiorBest;
+          bestHeight = i;
+          bestPortalBlocks = rowPortalBlocks;
+        }
+      }
+      portalBlocks = rowPortalBlocks;
+    }
+    if (best == Long.SIZE) {
+      return new PortalShape(axis, portalBlocks, direction, new BlockPos(x, bottom, z), width, 0);
+    }
+    matched = registry.definition(best);
+    return new PortalShape(axis, bestPortalBlocks, direction, new BlockPos(x, bottom, z), width, bestHeight);
+  }
+
+  /**
+   * Narrows down the candidates to those whose frame tag is satisfied by the whole given row.<br>
+   * Mirrors {@link PortalShape#hasTopFrame(BlockGetter, BlockPos, Direction, BlockPos.MutableBlockPos, int, int)}.
+   *
+   * @param x bottom left X.
+   * @param y row Y.
+   * @param z bottom left Z.
+   * @param dx X step.
+   * @param dz Z step.
+   * @param width portal width.
+   * @param candidates mask of the candidate definitions.
+   * @return mask of the definitions with a top frame.
+   */
+  private long top(int x, int y, int z, int dx, int dz, int width, long candidates) {
+    long top = candidates;
+    for (int j = 0; j < width && top != 0; j++) {
+      top &= registry.frameMask(state(x + dx * j, y, z + dz * j));
+    }
+    return top;
+  }
+
+  /**
+   * Reads the block state at the given coordinates, same as {@link BlockGetter#getBlockState(BlockPos)}.<br>
+   * When possible, reads it straight from the cached chunk section, looking up a new chunk or section only when the coordinates leave the cached ones.
+   *
+   * @param x X coordinate.
+   * @param y Y coordinate.
+   * @param z Z coordinate.
+   * @return block state.
+   */
+  private BlockState state(int x, int y, int z) {
+    reads++;
+    if (reader == null) {
+      return level.getBlockState(cursor.set(x, y, z));
+    }
+    if (reader.isOutsideBuildHeight(y)) {
+      return Blocks.VOID_AIR.defaultBlockState();
+    }
+    int cx = SectionPos.blockToSectionCoord(x);
+    int cz = SectionPos.blockToSectionCoord(z);
+    if (chunk == null || cx != chunkX || cz != chunkZ) {
+      chunk = reader.getChunk(cx, cz);
+      chunkX = cx;
+      chunkZ = cz;
+      section = null;
+    }
+    int sy = SectionPos.blockToSectionCoord(y);
+    if (section == null || sy != sectionY) {
+      section = chunk.getSection(chunk.getSectionIndexFromSectionY(sy));
+      sectionY = sy;
+    }
+    return section.getBlockState(x & 15, y & 15, z & 15);
+  }
+}
@@ -0,0 +1,220 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import net.minecraft.BlockUtil;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Record of a lit Custom Portal.
+ *
+ * @param bottomLeft position of the bottom left corner of the portal interior.
+ * @param axis portal orientation.
+ * @param width portal width.
+ * @param height portal height.
+ * @param dimension Custom Dimension the portal is for.
+ * @param origin other end of the portal, that is the dimension it is in or, for portals in the Custom Dimension itself, the dimension it leads back to.
+ */
+public record CustomPortalRecord(BlockPos bottomLeft, Direction.Axis axis, int width, int height, ResourceKey<Level> dimension, ResourceKey<Level> origin) {
+  /**
+   * Dimension this portal leads to from the given one.
+   *
+   * @param level dimension the portal is in.
+   * @return destination dimension key.
+   */
+  public ResourceKey<Level> destination(ResourceKey<Level> level) {
+    return level == dimension ? origin : dimension;
+  }
+
+  /**
+   * Direction the portal extends towards from its bottom left corner, same as {@link net.minecraft.world.level.portal.PortalShape}.
+   *
+   * @return portal building direction.
+   */
+  public Direction rightDir() {
+    return axis == Direction.Axis.X ? Direction.WEST : Direction.SOUTH;
+  }
+
+  /**
+   * Minimum X of the portal interior.
+   *
+   * @return minimum X.
+   */
+  public int minX() {
+    return axis == Direction.Axis.X ? bottomLeft.getX() - width + 1 : bottomLeft.getX();
+  }
+
+  /**
+   * Maximum X of the portal interior.
+   *
+   * @return maximum X.
+   */
+  public int maxX() {
+    return bottomLeft.getX();
+  }
+
+  /**
+   * Minimum Y of the portal interior.
+   *
+   * @return minimum Y.
+   */
+  public int minY() {
+    return bottomLeft.getY();
+  }
+
+  /**
+   * Maximum Y of the portal interior.
+   *
+   * @return maximum Y.
+   */
+  public int maxY() {
+    return bottomLeft.getY() + height - 1;
+  }
+
+  /**
+   * Minimum Z of the portal interior.
+   *
+   * @return minimum Z.
+   */
+  public int minZ() {
+    return bottomLeft.getZ();
+  }
+
+  /**
+   * Maximum Z of the portal interior.
+   *
+   * @return maximum Z.
+   */
+  public int maxZ() {
+    return axis == Direction.Axis.X ? bottomLeft.getZ() : bottomLeft.getZ() + width - 1;
+  }
+
+  /**
+   * Whether the given position is inside the portal interior.
+   *
+   * @param pos position.
+   * @return whether the given position is inside the portal interior.
+   */
+  public boolean contains(BlockPos pos) {
+    return contains(pos.getX(), pos.getY(), pos.getZ());
+  }
+
+  /**
+   * Whether the given coordinates are inside the portal interior.
+   *
+   * @param x X coordinate.
+   * @param y Y coordinate.
+   * @param z Z coordinate.
+   * @return whether the given coordinates are inside the portal interior.
+   */
+  public boolean contains(int x, int y, int z) {
+    return x >= minX() && x <= maxX() && y >= minY() && y <= maxY() && z >= minZ() && z <= maxZ();
+  }
+
+  /**
+   * Whether the given coordinates are inside the portal interior or its frame (corners included).
+   *
+   * @param x X coordinate.
+   * @param y Y coordinate.
+   * @param z Z coordinate.
+   * @return whether the given coordinates are inside the portal bounding box.
+   */
+  public boolean containsWithFrame(int x, int y, int z) {
+    int dx = axis == Direction.Axis.X ? 1 : 0;
+    int dz = axis == Direction.Axis.Z ? 1 : 0;
+    return x >= minX() - dx && x <= maxX() + dx && y >= minY() - 1 && y <= maxY() + 1 && z >= minZ() - dz && z <= maxZ() + dz;
+  }
+
+  /**
+   * Bounding box of the portal, frame included.
+   *
+   * @return portal bounding box.
+   */
+  public BoundingBox frameBounds() {
+    int dx = axis == Direction.Axis.X ? 1 : 0;
+    int dz = axis == Direction.Axis.Z ? 1 : 0;
+    return new BoundingBox(minX() - dx, minY() - 1, minZ() - dz, maxX() + dx, maxY() + 1, maxZ() + dz);
+  }
+
+  /**
+   * Whether this portal overlaps the given one.
+   *
+   * @param other other portal.
+   * @return whether the two portals overlap.
+   */
+  public boolean overlaps(CustomPortalRecord other) {
+    return minX() <= other.maxX() && maxX() >= other.minX() && minY() <= other.maxY() && maxY() >= other.minY() && minZ() <= other.maxZ() && maxZ() >= other.minZ();
+  }
+
+  /**
+   * Calls the given consumer with the {@link ChunkPos#toLong() packed position} of every chunk the portal interior spans.
+   *
+   * @param consumer chunk consumer.
+   */
+  public void forEachChunk(LongConsumer consumer) {
+    for (int x = minX() >> 4; x <= maxX() >> 4; x++) {
+      for (int z = minZ() >> 4; z <= maxZ() >> 4; z++) {
+        consumer.accept(ChunkPos.asLong(x, z));
+      }
+    }
+  }
+
+  /**
+   * Creates the record of a portal built by {@link net.minecraft.world.level.portal.PortalForcer#createPortal(BlockPos, Direction.Axis)}.
+   *
+   * @param rectangle portal interior.
+   * @param axis portal orientation.
+   * @param dimension Custom Dimension the portal is for.
+   * @param origin other end of the portal.
+   * @return portal record.
+   */
+  public static CustomPortalRecord of(BlockUtil.FoundRectangle rectangle, Direction.Axis axis, ResourceKey<Level> dimension, ResourceKey<Level> origin) {
+    // The rectangle starts from its minimum corner, while the bottom left corner is at the maximum X for portals along the X axis.
+    BlockPos bottomLeft = axis == Direction.Axis.X ? rectangle.minCorner.east(rectangle.axis1Size - 1) : rectangle.minCorner;
+    return new CustomPortalRecord(bottomLeft.immutable(), axis, rectangle.axis1Size, rectangle.axis2Size, dimension, origin);
+  }
+
+  /**
+   * Saves this record into a {@link CompoundTag}.
+   *
+   * @return saved record.
+   */
+  public CompoundTag save() {
+    CompoundTag tag = new CompoundTag();
+    tag.putLong("bottomLeft", bottomLeft.asLong());
+    tag.putString("axis", axis.getSerializedName());
+    tag.putInt("width", width);
+    tag.putInt("height", height);
+    tag.putString("dimension", dimension.location().toString());
+    tag.putString("origin", origin.location().toString());
+    return tag;
+  }
+
+  /**
+   * Loads a record from a {@link CompoundTag}.<br>
+   * Records saved without an origin lead back to the Overworld, as every Custom Portal used to.
+   *
+   * @param tag saved record.
+   * @return loaded record or {@code null} if the saved data is malformed.
+   */
+  @Nullable
+  public static CustomPortalRecord load(CompoundTag tag) {
+    Direction.Axis axis = Direction.Axis.byName(tag.getString("axis"));
+    ResourceLocation dimension = ResourceLocation.tryParse(tag.getString("dimension"));
+    ResourceLocation origin = tag.contains("origin", Tag.TAG_STRING) ? ResourceLocation.tryParse(tag.getString("origin")) : Level.OVERWORLD.location();
+    if (axis == null || axis == Direction.Axis.Y || dimension == null || origin == null) {
+      return null;
+    }
+    return new CustomPortalRecord(BlockPos.of(tag.getLong("bottomLeft")), axis, tag.getInt("width"), tag.getInt("height"), ResourceKey.create(Registries.DIMENSION, dimension), ResourceKey.create(Registries.DIMENSION, origin));
+  }
+}
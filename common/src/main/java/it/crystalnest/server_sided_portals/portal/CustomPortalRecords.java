@@ -0,0 +1,285 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import it.crystalnest.server_sided_portals.Constants;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.Mth;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.border.WorldBorder;
+import net.minecraft.world.level.portal.PortalForcer;
+import net.minecraft.world.level.saveddata.SavedData;
+import org.apache.commons.lang3.mutable.MutableInt;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Persistent store of the lit Custom Portals of a dimension, indexed by chunk and, for exit portal lookups, by the dimension they lead to.
+ */
+public final class CustomPortalRecords extends SavedData {
+  /**
+   * Name of the saved data file.
+   */
+  private static final String NAME = Constants.MOD_ID + "_portals";
+
+  /**
+   * {@link SavedData.Factory} for this saved data.
+   */
+  private static final SavedData.Factory<CustomPortalRecords> FACTORY = new SavedData.Factory<>(CustomPortalRecords::new, CustomPortalRecords::load, null);
+
+  /**
+   * All the records.
+   */
+  private final Set<CustomPortalRecord> records = new LinkedHashSet<>();
+
+  /**
+   * Records by {@link ChunkPos#toLong() chunk}, a record is present in every chunk its interior spans.
+   */
+  private final Long2ObjectMap<List<CustomPortalRecord>> byChunk = new Long2ObjectOpenHashMap<>();
+
+  /**
+   * Spatial index of the records by the dimension they lead to, then by {@link ChunkPos#toLong() chunk}.
+   */
+  private final Map<ResourceKey<Level>, Long2ObjectMap<List<CustomPortalRecord>>> byDimension = new HashMap<>();
+
+  /**
+   * Returns the Custom Portal records of the given dimension.
+   *
+   * @param level dimension.
+   * @return Custom Portal records.
+   */
+  public static CustomPortalRecords get(ServerLevel level) {
+    return level.getDataStorage().computeIfAbsent(FACTORY, NAME);
+  }
+
+  /**
+   * Loads the records from the saved data.
+   *
+   * @param tag saved data.
+   * @param provider registries lookup.
+   * @return loaded records.
+   */
+  private static CustomPortalRecords load(CompoundTag tag, HolderLookup.Provider provider) {
+    CustomPortalRecords records = new CustomPortalRecords();
+    for (Tag entry : tag.getList("portals", Tag.TAG_COMPOUND)) {
+      CustomPortalRecord record = CustomPortalRecord.load((CompoundTag) entry);
+      if (record != null) {
+        records.index(record);
+      }
+    }
+    return records;
+  }
+
+  @Override
+  public CompoundTag save(CompoundTag tag, HolderLookup.Provider provider) {
+    ListTag portals = new ListTag();
+    for (CustomPortalRecord record : records) {
+      portals.add(record.save());
+    }
+    tag.put("portals", portals);
+    return tag;
+  }
+
+  /**
+   * Returns the record of the Custom Portal whose interior contains the given position.
+   *
+   * @param pos position.
+   * @return the record or {@code null} if there is no recorded Custom Portal at the given position.
+   */
+  @Nullable
+  public CustomPortalRecord find(BlockPos pos) {
+    List<CustomPortalRecord> candidates = byChunk.get(ChunkPos.asLong(pos));
+    if (candidates != null) {
+      for (CustomPortalRecord record : candidates) {
+        if (record.contains(pos)) {
+          return record;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Finds the block of the Custom Portal for the given dimension and origin that is closest to the given position, nearest chunks first.<br>
+   * Like {@link PortalForcer#findClosestPortalPosition(BlockPos, boolean, WorldBorder)}, only portals within a square of the given radius are considered.<br>
+   * Records whose portal no longer exists are dropped along the way.
+   *
+   * @param level dimension these records belong to.
+   * @param dimension Custom Dimension the portal must be for.
+   * @param origin origin the portal must have.
+   * @param pos search center.
+   * @param radius search radius.
+   * @param worldBorder world border.
+   * @param candidates incremented by the amount of records examined.
+   * @return closest portal block, if any.
+   */
+  public Optional<BlockPos> findClosest(ServerLevel level, ResourceKey<Level> dimension, ResourceKey<Level> origin, BlockPos pos, int radius, WorldBorder worldBorder, MutableInt candidates) {
+    Long2ObjectMap<List<CustomPortalRecord>> spatial = byDimension.get(dimension);
+    if (spatial == null) {
+      return Optional.empty();
+    }
+    int centerX = SectionPos.blockToSectionCoord(pos.getX());
+    int centerZ = SectionPos.blockToSectionCoord(pos.getZ());
+    int chunkRadius = SectionPos.blockToSectionCoord(radius) + 1;
+    BlockPos.MutableBlockPos candidate = new BlockPos.MutableBlockPos();
+    BlockPos closest = null;
+    double closestDistance = Double.MAX_VALUE;
+    List<CustomPortalRecord> stale = new ArrayList<>();
+    for (int ring = 0; ring <= chunkRadius; ring++) {
+      // Chunks in this ring are at least (ring - 1) * 16 blocks away, no closer portal can be found from here on.
+      double ringDistance = Math.max(0, ring - 1) * 16.0;
+      if (closest != null && ringDistance * ringDistance > closestDistance) {
+        break;
+      }
+      for (int x = centerX - ring; x <= centerX + ring; x++) {
+        for (int z = centerZ - ring; z <= centerZ + ring; z++) {
+          if (Math.max(Math.abs(x - centerX), Math.abs(z - centerZ)) != ring) {
+            continue;
+          }
+          List<CustomPortalRecord> bucket = spatial.get(ChunkPos.asLong(x, z));
+          if (bucket == null) {
+            continue;
+          }
+          candidates.add(bucket.size());
+          for (CustomPortalRecord record : bucket) {
+            if (record.origin() != origin) {
+              continue;
+            }
+            // Closest block of the portal interior that is also within the search square.
+            candidate.set(
+              Mth.clamp(pos.getX(), Math.max(record.minX(), pos.getX() - radius), Math.min(record.maxX(), pos.getX() + radius)),
+              Mth.clamp(pos.getY(), record.minY(), record.maxY()),
+              Mth.clamp(pos.getZ(), Math.max(record.minZ(), pos.getZ() - radius), Math.min(record.maxZ(), pos.getZ() + radius))
+            );
+            double distance = candidate.distSqr(pos);
+            if (record.contains(candidate) && distance < closestDistance && worldBorder.isWithinBounds(candidate)) {
+              if (level.getBlockState(candidate).is(Blocks.NETHER_PORTAL)) {
+                closest = candidate.immutable();
+                closestDistance = distance;
+              } else if (!stale.contains(record)) {
+                stale.add(record);
+              }
+            }
+          }
+        }
+      }
+    }
+    stale.forEach(this::remove);
+    return Optional.ofNullable(closest);
+  }
+
+  /**
+   * Adds a record, replacing any record it overlaps.
+   *
+   * @param record record to add.
+   */
+  public void add(CustomPortalRecord record) {
+    removeOverlapping(record);
+    index(record);
+    setDirty();
+  }
+
+  /**
+   * Removes the given record.
+   *
+   * @param record record to remove.
+   */
+  public void remove(CustomPortalRecord record) {
+    if (records.remove(record)) {
+      Long2ObjectMap<List<CustomPortalRecord>> spatial = byDimension.get(record.dimension());
+      record.forEachChunk(chunk -> {
+        unindex(byChunk, chunk, record);
+        if (spatial != null) {
+          unindex(spatial, chunk, record);
+        }
+      });
+      if (spatial != null && spatial.isEmpty()) {
+        byDimension.remove(record.dimension());
+      }
+      setDirty();
+    }
+  }
+
+  /**
+   * Removes the record of the Custom Portal whose interior contains the given position, if any.
+   *
+   * @param pos position.
+   * @return the removed record or {@code null} if there was none.
+   */
+  @Nullable
+  public CustomPortalRecord removeAt(BlockPos pos) {
+    CustomPortalRecord record = find(pos);
+    if (record != null) {
+      remove(record);
+    }
+    return record;
+  }
+
+  /**
+   * Removes every record overlapping the given one.
+   *
+   * @param record record to check against.
+   */
+  public void removeOverlapping(CustomPortalRecord record) {
+    List<CustomPortalRecord> overlapping = new ArrayList<>();
+    record.forEachChunk(chunk -> {
+      List<CustomPortalRecord> list = byChunk.get(chunk);
+      if (list != null) {
+        for (CustomPortalRecord other : list) {
+          if (other.overlaps(record) && !overlapping.contains(other)) {
+            overlapping.add(other);
+          }
+        }
+      }
+    });
+    overlapping.forEach(this::remove);
+  }
+
+  /**
+   * Adds the record to the indexes without marking the data as dirty.
+   *
+   * @param record record to add.
+   */
+  private void index(CustomPortalRecord record) {
+    if (records.add(record)) {
+      Long2ObjectMap<List<CustomPortalRecord>> spatial = byDimension.computeIfAbsent(record.dimension(), dimension -> new Long2ObjectOpenHashMap<>());
+      record.forEachChunk(chunk -> {
+        byChunk.computeIfAbsent(chunk, key -> new ArrayList<>()).add(record);
+        spatial.computeIfAbsent(chunk, key -> new ArrayList<>()).add(record);
+      });
+    }
+  }
+
+  /**
+   * Removes the record from the given chunk index.
+   *
+   * @param index chunk index.
+   * @param chunk chunk.
+   * @param record record to remove.
+   */
+  private static void unindex(Long2ObjectMap<List<CustomPortalRecord>> index, long chunk, CustomPortalRecord record) {
+    List<CustomPortalRecord> list = index.get(chunk);
+    if (list != null) {
+      list.remove(record);
+      if (list.isEmpty()) {
+        index.remove(chunk);
+      }
+    }
+  }
+}
@@ -0,0 +1,379 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import it.crystalnest.server_sided_portals.Constants;
+import it.crystalnest.server_sided_portals.MixinToggle;
+import net.minecraft.core.Holder;
+import net.minecraft.core.HolderSet;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of all the Custom Portal definitions.<br>
+ * Built once when the server starts and rebuilt atomically whenever datapacks and tags are reloaded.
+ */
+public final class CustomPortalRegistry {
+  /**
+   * Empty registry, used when no server is running or no Custom Dimension is configured.
+   */
+  public static final CustomPortalRegistry EMPTY = new CustomPortalRegistry(List.of());
+
+  /**
+   * Maximum amount of Custom Portal definitions, one for each bit of a dimension mask.
+   */
+  public static final int MAX_DEFINITIONS = Long.SIZE;
+
+  /**
+   * Current snapshot, {@code null} if it has not been built yet.
+   */
+  @Nullable
+  private static volatile CustomPortalRegistry current = null;
+
+  /**
+   * Dimensions with a Custom Portal, in the same order as {@link MinecraftServer#levelKeys()}.
+   */
+  private final List<ResourceKey<Level>> dimensions;
+
+  /**
+   * Custom Portal definitions, in the same order as {@link #dimensions}.
+   */
+  private final List<CustomPortalDefinition> definitions;
+
+  /**
+   * Custom Portal definitions by dimension.
+   */
+  private final Map<ResourceKey<Level>, CustomPortalDefinition> byDimension;
+
+  /**
+   * Mask with the bit of every definition set.
+   */
+  private final long allMask;
+
+  /**
+   * Reverse index from each {@link Block#BLOCK_STATE_REGISTRY global block state id} to the mask of the Custom Portal definitions whose frame tag contains
+   * its block.<br>
+   * A non-zero entry means the block state is a Custom Portal Frame for some dimension.
+   */
+  private final long[] frameMasks;
+
+  /**
+   * Reverse index from each {@link BuiltInRegistries#ITEM item id} to the mask of the Custom Portal definitions whose igniter tag contains it.
+   */
+  private final long[] igniterMasks;
+
+  /**
+   * Mask of the Custom Portal definitions allowing each portal width, by width.
+   */
+  private final long[] widthMasks = new long[CustomPortalMatcher.MAX_SIZE + 1];
+
+  /**
+   * Mask of the Custom Portal definitions allowing each portal height, by height.
+   */
+  private final long[] heightMasks = new long[CustomPortalMatcher.MAX_SIZE + 1];
+
+  /**
+   * Mask of the Custom Portal definitions that can be lit in each dimension, by dimension.
+   */
+  private final Map<ResourceKey<Level>, Long> lightableMasks;
+
+  /**
+   * @param definitions Custom Portal definitions, indexed by their position.
+   */
+  private CustomPortalRegistry(List<CustomPortalDefinition> definitions) {
+    this.definitions = List.copyOf(definitions);
+    this.dimensions = definitions.stream().map(CustomPortalDefinition::dimension).toList();
+    Map<ResourceKey<Level>, CustomPortalDefinition> map = new HashMap<>();
+    Map<ResourceKey<Level>, Long> lightable = new HashMap<>();
+    long all = 0;
+    // The empty registry is built before the game registries are, and has no use for the tables.
+    long[] frames = definitions.isEmpty() ? new long[0] : new long[Block.BLOCK_STATE_REGISTRY.size()];
+    long[] igniters = definitions.isEmpty() ? new long[0] : new long[BuiltInRegistries.ITEM.size()];
+    for (CustomPortalDefinition definition : definitions) {
+      map.put(definition.dimension(), definition);
+      all |= definition.mask();
+      lightable.merge(definition.dimension(), definition.mask(), (a, b) -> a | b);
+      for (ResourceKey<Level> origin : definition.origins()) {
+        lightable.merge(origin, definition.mask(), (a, b) -> a | b);
+      }
+      for (int width = definition.minWidth(); width <= definition.maxWidth(); width++) {
+        widthMasks[width] |= definition.mask();
+      }
+      for (int height = definition.minHeight(); height <= definition.maxHeight(); height++) {
+        heightMasks[height] |= definition.mask();
+      }
+      for (Holder<Block> holder : definition.frameBlocks()) {
+        for (BlockState state : holder.value().getStateDefinition().getPossibleStates()) {
+          frames[Block.getId(state)] |= definition.mask();
+        }
+      }
+      if (definition.igniterItems().isPresent()) {
+        for (Holder<Item> holder : definition.igniterItems().get()) {
+          igniters[Item.getId(holder.value())] |= definition.mask();
+        }
+      }
+    }
+    this.byDimension = Map.copyOf(map);
+    this.lightableMasks = Map.copyOf(lightable);
+    this.allMask = all;
+    this.frameMasks = frames;
+    this.igniterMasks = igniters;
+  }
+
+  /**
+   * Returns the current snapshot.<br>
+   * If the snapshot has not been built yet, returns {@link #EMPTY}.
+   *
+   * @return current snapshot.
+   */
+  public static CustomPortalRegistry get() {
+    CustomPortalRegistry registry = current;
+    return registry == null ? EMPTY : registry;
+  }
+
+  /**
+   * Returns the current snapshot, building it if it has not been built yet.
+   *
+   * @param server Minecraft server.
+   * @return current snapshot.
+   */
+  public static CustomPortalRegistry get(MinecraftServer server) {
+    CustomPortalRegistry registry = current;
+    return registry == null ? rebuild(server) : registry;
+  }
+
+  /**
+   * Rebuilds the snapshot from the dimensions, tags and {@link CustomPortalSpec Custom Portal definitions} currently loaded by the server.<br>
+   * The new snapshot replaces the previous one atomically.<br>
+   * If the mod mixins are turned off with {@link MixinToggle}, the snapshot is always empty.
+   *
+   * @param server Minecraft server.
+   * @return the new snapshot.
+   */
+  public static CustomPortalRegistry rebuild(MinecraftServer server) {
+    if (!MixinToggle.ENABLED) {
+      Constants.LOGGER.warn("Mixins turned off with -D{}=false, Custom Portals are disabled", MixinToggle.PROPERTY);
+      current = EMPTY;
+      return EMPTY;
+    }
+    CustomPortalRegistry registry = build(server.levelKeys(), CustomPortalSpec.load(server.getResourceManager()));
+    current = registry;
+    // Cached portal shapes were computed with the previous definitions.
+    for (ServerLevel level : server.getAllLevels()) {
+      ((CustomPortalLevel) level).portalShapeCache().clear();
+    }
+    Constants.LOGGER.debug("Built Custom Portal registry with {} dimension(s): {}", registry.dimensions.size(), registry.dimensions);
+    return registry;
+  }
+
+  /**
+   * Builds a snapshot from the given dimensions and the tags currently bound to the game registries, without installing it.<br>
+   * Every dimension is defined by the naming convention of its tags.
+   *
+   * @param dimensions dimensions to look for Custom Portals.
+   * @return the new snapshot.
+   */
+  public static CustomPortalRegistry build(Iterable<ResourceKey<Level>> dimensions) {
+    return build(dimensions, Map.of());
+  }
+
+  /**
+   * Builds a snapshot from the given dimensions, the given {@link CustomPortalSpec Custom Portal definitions} and the tags currently bound to the game
+   * registries, without installing it.<br>
+   * Dimensions without a definition are defined by the naming convention of their tags.
+   *
+   * @param dimensions dimensions to look for Custom Portals.
+   * @param specs Custom Portal definitions by dimension.
+   * @return the new snapshot.
+   */
+  public static CustomPortalRegistry build(Iterable<ResourceKey<Level>> dimensions, Map<ResourceKey<Level>, CustomPortalSpec> specs) {
+    List<CustomPortalDefinition> definitions = new ArrayList<>();
+    Set<ResourceKey<Level>> unused = new HashSet<>(specs.keySet());
+    for (ResourceKey<Level> dimension : dimensions) {
+      unused.remove(dimension);
+      CustomPortalSpec spec = specs.getOrDefault(dimension, CustomPortalSpec.of(dimension));
+      Optional<HolderSet.Named<Block>> frameBlocks = BuiltInRegistries.BLOCK.get(spec.frame());
+      if (frameBlocks.isEmpty()) {
+        if (specs.containsKey(dimension)) {
+          Constants.LOGGER.warn("Custom Portal Frame tag {} of {} does not exist: skipping it", spec.frame().location(), dimension.location());
+        }
+        continue;
+      }
+      if (definitions.size() == MAX_DEFINITIONS) {
+        Constants.LOGGER.warn("Too many Custom Dimensions, at most {} can have a Custom Portal: skipping {}", MAX_DEFINITIONS, dimension.location());
+        continue;
+      }
+      Optional<HolderSet.Named<Item>> igniterItems = spec.igniter().flatMap(BuiltInRegistries.ITEM::get);
+      definitions.add(new CustomPortalDefinition(
+        definitions.size(),
+        dimension,
+        spec.frame(),
+        spec.igniter().orElse(CustomPortalSpec.igniterTag(dimension)),
+        frameBlocks.get(),
+        igniterItems,
+        spec.minWidth(),
+        spec.maxWidth(),
+        spec.minHeight(),
+        spec.maxHeight(),
+        spec.origins().stream().distinct().filter(origin -> origin != dimension).toList(),
+        spec.isLitByFire(igniterItems.isPresent())
+      ));
+    }
+    for (ResourceKey<Level> dimension : unused) {
+      Constants.LOGGER.warn("Custom Portal definition for {} ignored, the dimension does not exist", dimension.location());
+    }
+    return definitions.isEmpty() ? EMPTY : new CustomPortalRegistry(definitions);
+  }
+
+  /**
+   * Discards the current snapshot.
+   */
+  public static void clear() {
+    current = null;
+  }
+
+  /**
+   * Whether there are no Custom Portals.
+   *
+   * @return whether there are no Custom Portals.
+   */
+  public boolean isEmpty() {
+    return dimensions.isEmpty();
+  }
+
+  /**
+   * Dimensions with a Custom Portal.
+   *
+   * @return dimensions with a Custom Portal.
+   */
+  public List<ResourceKey<Level>> dimensions() {
+    return dimensions;
+  }
+
+  /**
+   * Custom Portal definitions.
+   *
+   * @return Custom Portal definitions.
+   */
+  public List<CustomPortalDefinition> definitions() {
+    return definitions;
+  }
+
+  /**
+   * Returns the Custom Portal definition for the given dimension.
+   *
+   * @param dimension dimension key.
+   * @return Custom Portal definition or {@code null} if the dimension has no Custom Portal.
+   */
+  @Nullable
+  public CustomPortalDefinition definition(ResourceKey<Level> dimension) {
+    return byDimension.get(dimension);
+  }
+
+  /**
+   * Returns the Custom Portal definition with the given index.
+   *
+   * @param index definition index, as in {@link CustomPortalDefinition#index()}.
+   * @return Custom Portal definition.
+   */
+  public CustomPortalDefinition definition(int index) {
+    return definitions.get(index);
+  }
+
+  /**
+   * Mask of all the Custom Portal definitions.
+   *
+   * @return mask of all the Custom Portal definitions.
+   */
+  public long allMask() {
+    return allMask;
+  }
+
+  /**
+   * Returns the mask of the Custom Portal definitions whose Custom Portal Frame contains the given block.
+   *
+   * @param state block state.
+   * @return mask of the Custom Portal definitions for the given frame block, {@code 0} if the block is not a Custom Portal Frame.
+   */
+  public long frameMask(BlockState state) {
+    int id = ((CustomPortalBlockState) state).portalStateId();
+    return id >= 0 && id < frameMasks.length ? frameMasks[id] : 0;
+  }
+
+  /**
+   * Whether the given block is a Custom Portal Frame for any dimension.
+   *
+   * @param state block state.
+   * @return whether the given block is a Custom Portal Frame.
+   */
+  public boolean isFrame(BlockState state) {
+    return frameMask(state) != 0;
+  }
+
+  /**
+   * Returns the mask of the Custom Portal definitions whose Custom Portal Igniter contains the given item.
+   *
+   * @param stack item stack.
+   * @return mask of the Custom Portal definitions for the given igniter item, {@code 0} if the item is not a Custom Portal Igniter.
+   */
+  public long igniterMask(ItemStack stack) {
+    int id = Item.getId(stack.getItem());
+    return id >= 0 && id < igniterMasks.length ? igniterMasks[id] : 0;
+  }
+
+  /**
+   * Whether the given dimension has a Custom Portal.
+   *
+   * @param dimension dimension key.
+   * @return whether the given dimension has a Custom Portal.
+   */
+  public boolean contains(ResourceKey<Level> dimension) {
+    return byDimension.containsKey(dimension);
+  }
+
+  /**
+   * Returns the mask of the Custom Portal definitions that can be lit in the given dimension, either because it is their Custom Dimension or one of their
+   * origins.
+   *
+   * @param dimension dimension key.
+   * @return mask of the Custom Portal definitions that can be lit in the given dimension.
+   */
+  public long lightableMask(ResourceKey<Level> dimension) {
+    Long mask = lightableMasks.get(dimension);
+    return mask == null ? 0 : mask;
+  }
+
+  /**
+   * Returns the mask of the Custom Portal definitions allowing the given portal width.
+   *
+   * @param width portal width.
+   * @return mask of the Custom Portal definitions allowing the given width.
+   */
+  public long widthMask(int width) {
+    return width >= 0 && width < widthMasks.length ? widthMasks[width] : 0;
+  }
+
+  /**
+   * Returns the mask of the Custom Portal definitions allowing the given portal height.
+   *
+   * @param height portal height.
+   * @return mask of the Custom Portal definitions allowing the given height.
+   */
+  public long heightMask(int height) {
+    return height >= 0 && height < heightMasks.length ? heightMasks[height] : 0;
+  }
+}
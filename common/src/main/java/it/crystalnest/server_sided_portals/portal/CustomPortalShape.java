@@ -0,0 +1,29 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+import net.minecraft.world.level.portal.PortalShape;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Internal view of a {@link PortalShape}.
+ */
+public interface CustomPortalShape {
+  /**
+   * Creates the {@link CustomPortalRecord} describing this portal.
+   *
+   * @param level dimension the portal is in.
+   * @return the record or {@code null} if this is not a valid Custom Portal.
+   */
+  @Nullable
+  CustomPortalRecord toRecord(ResourceKey<Level> level);
+
+  /**
+   * Bounding box of this portal, frame included.<br>
+   * Only meaningful for valid portals.
+   *
+   * @return portal bounding box.
+   */
+  BoundingBox frameBounds();
+}
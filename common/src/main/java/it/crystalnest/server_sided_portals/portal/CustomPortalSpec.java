@@ -0,0 +1,156 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.JsonOps;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+import it.crystalnest.server_sided_portals.Constants;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.resources.Resource;
+import net.minecraft.server.packs.resources.ResourceManager;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Custom Portal definition provided by a datapack, read from {@code data/<namespace>/server_sided_portals/portal/<name>.json}.<br>
+ * Dimensions without one keep using the {@code <dimension>_portal_frame} and {@code <dimension>_portal_igniter} tags with the Vanilla size limits.<br>
+ * Sizes can only narrow down the Vanilla limits.
+ *
+ * @param dimension Custom Dimension the portal leads to.
+ * @param frame Block Tag for the Custom Portal Frame.
+ * @param igniter Item Tag for the Custom Portal Igniter, if any.
+ * @param minWidth minimum portal width.
+ * @param maxWidth maximum portal width.
+ * @param minHeight minimum portal height.
+ * @param maxHeight maximum portal height.
+ * @param origins dimensions, other than the Custom Dimension itself, where the portal can be lit to travel to the Custom Dimension. Portals lit in the
+ *   Custom Dimension itself lead back to the first one.
+ * @param fireLights whether fire lights the portal, by default only portals without a Custom Portal Igniter are lit by fire.
+ */
+public record CustomPortalSpec(
+  ResourceKey<Level> dimension,
+  TagKey<Block> frame,
+  Optional<TagKey<Item>> igniter,
+  int minWidth,
+  int maxWidth,
+  int minHeight,
+  int maxHeight,
+  List<ResourceKey<Level>> origins,
+  Optional<Boolean> fireLights
+) {
+  /**
+   * Resource directory the definitions are read from.
+   */
+  public static final String DIRECTORY = Constants.MOD_ID + "/portal";
+
+  /**
+   * {@link Codec} for the definition files.
+   */
+  public static final Codec<CustomPortalSpec> CODEC = RecordCodecBuilder.<CustomPortalSpec>create(instance -> instance.group(
+    Level.RESOURCE_KEY_CODEC.fieldOf("dimension").forGetter(CustomPortalSpec::dimension),
+    TagKey.hashedCodec(Registries.BLOCK).fieldOf("frame").forGetter(CustomPortalSpec::frame),
+    TagKey.hashedCodec(Registries.ITEM).optionalFieldOf("igniter").forGetter(CustomPortalSpec::igniter),
+    Codec.intRange(CustomPortalMatcher.MIN_WIDTH, CustomPortalMatcher.MAX_SIZE).optionalFieldOf("min_width", CustomPortalMatcher.MIN_WIDTH).forGetter(CustomPortalSpec::minWidth),
+    Codec.intRange(CustomPortalMatcher.MIN_WIDTH, CustomPortalMatcher.MAX_SIZE).optionalFieldOf("max_width", CustomPortalMatcher.MAX_SIZE).forGetter(CustomPortalSpec::maxWidth),
+    Codec.intRange(CustomPortalMatcher.MIN_HEIGHT, CustomPortalMatcher.MAX_SIZE).optionalFieldOf("min_height", CustomPortalMatcher.MIN_HEIGHT).forGetter(CustomPortalSpec::minHeight),
+    Codec.intRange(CustomPortalMatcher.MIN_HEIGHT, CustomPortalMatcher.MAX_SIZE).optionalFieldOf("max_height", CustomPortalMatcher.MAX_SIZE).forGetter(CustomPortalSpec::maxHeight),
+    Level.RESOURCE_KEY_CODEC.listOf().optionalFieldOf("origins", List.of(Level.OVERWORLD)).forGetter(CustomPortalSpec::origins),
+    Codec.BOOL.optionalFieldOf("fire_lights").forGetter(CustomPortalSpec::fireLights)
+  ).apply(instance, CustomPortalSpec::new)).validate(CustomPortalSpec::validate);
+
+  /**
+   * Default definition of the given dimension, based on the naming convention of its tags.
+   *
+   * @param dimension dimension key.
+   * @return default {@link CustomPortalSpec}.
+   */
+  public static CustomPortalSpec of(ResourceKey<Level> dimension) {
+    return new CustomPortalSpec(dimension, frameTag(dimension), Optional.of(igniterTag(dimension)), CustomPortalMatcher.MIN_WIDTH, CustomPortalMatcher.MAX_SIZE, CustomPortalMatcher.MIN_HEIGHT, CustomPortalMatcher.MAX_SIZE, List.of(Level.OVERWORLD), Optional.empty());
+  }
+
+  /**
+   * Block Tag for the Custom Portal Frame of the given dimension by naming convention, {@code <dimension>_portal_frame}.
+   *
+   * @param dimension dimension key.
+   * @return Block Tag for the Custom Portal Frame.
+   */
+  public static TagKey<Block> frameTag(ResourceKey<Level> dimension) {
+    return TagKey.create(Registries.BLOCK, ResourceLocation.fromNamespaceAndPath(dimension.location().getNamespace(), dimension.location().getPath() + "_portal_frame"));
+  }
+
+  /**
+   * Item Tag for the Custom Portal Igniter of the given dimension by naming convention, {@code <dimension>_portal_igniter}.
+   *
+   * @param dimension dimension key.
+   * @return Item Tag for the Custom Portal Igniter.
+   */
+  public static TagKey<Item> igniterTag(ResourceKey<Level> dimension) {
+    return TagKey.create(Registries.ITEM, ResourceLocation.fromNamespaceAndPath(dimension.location().getNamespace(), dimension.location().getPath() + "_portal_igniter"));
+  }
+
+  /**
+   * Reads all the definitions provided by the loaded datapacks.<br>
+   * Invalid files are logged and skipped. When more files define the same dimension, the first one by resource id wins.
+   *
+   * @param resourceManager server {@link ResourceManager}.
+   * @return definitions by dimension.
+   */
+  public static Map<ResourceKey<Level>, CustomPortalSpec> load(ResourceManager resourceManager) {
+    Map<ResourceKey<Level>, CustomPortalSpec> specs = new HashMap<>();
+    Map<ResourceLocation, Resource> resources = new TreeMap<>(resourceManager.listResources(DIRECTORY, path -> path.getPath().endsWith(".json")));
+    resources.forEach((id, resource) -> {
+      try (Reader reader = resource.openAsReader()) {
+        JsonElement json = JsonParser.parseReader(reader);
+        CustomPortalSpec spec = CODEC.parse(JsonOps.INSTANCE, json).getOrThrow(JsonParseException::new);
+        CustomPortalSpec previous = specs.putIfAbsent(spec.dimension(), spec);
+        if (previous != null) {
+          Constants.LOGGER.warn("Custom Portal definition {} is for {}, which already has one: skipping it", id, spec.dimension().location());
+        }
+      } catch (IOException | RuntimeException e) {
+        Constants.LOGGER.error("Could not read Custom Portal definition {}", id, e);
+      }
+    });
+    return specs;
+  }
+
+  /**
+   * Whether fire lights the portal.
+   *
+   * @param hasIgniter whether the portal has a Custom Portal Igniter item.
+   * @return whether fire lights the portal.
+   */
+  public boolean isLitByFire(boolean hasIgniter) {
+    return fireLights.orElse(!hasIgniter);
+  }
+
+  /**
+   * Checks the size limits are consistent.
+   *
+   * @param spec {@link CustomPortalSpec}.
+   * @return validation result.
+   */
+  private static DataResult<CustomPortalSpec> validate(CustomPortalSpec spec) {
+    if (spec.minWidth > spec.maxWidth) {
+      return DataResult.error(() -> "min_width " + spec.minWidth + " is greater than max_width " + spec.maxWidth);
+    }
+    if (spec.minHeight > spec.maxHeight) {
+      return DataResult.error(() -> "min_height " + spec.minHeight + " is greater than max_height " + spec.maxHeight);
+    }
+    return DataResult.success(spec);
+  }
+}
@@ -0,0 +1,288 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import it.crystalnest.server_sided_portals.config.ExitPlacement;
+import net.minecraft.BlockUtil;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.util.Mth;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.NetherPortalBlock;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.border.WorldBorder;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.levelgen.Heightmap;
+import net.minecraft.world.level.portal.PortalForcer;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Builds Custom Portal exits like {@link PortalForcer#createPortal(BlockPos, Direction.Axis)}, with the frame blocks of the Custom Portal.<br>
+ * With {@link ExitPlacement#VANILLA}, every block of every column within 16 blocks of the exit position is checked, from the surface down to the
+ * bottom of the dimension, same as Vanilla. That gets very expensive in tall dimensions, so with {@link ExitPlacement#HEIGHTMAP} only the surface of
+ * each column is checked, and columns whose surface is above the usable height (e.g. under a roof) are scanned downward skipping the whole chunk
+ * sections whose palette holds no replaceable block.<br>
+ * As in Vanilla, the spot closest to the exit position wins.<br>
+ * When no spot is found, a platform is built as in Vanilla. All blocks are written as a single {@link PortalBuildBatch}.
+ */
+public final class ExitPortalPlacer {
+  /**
+   * Same as {@link PortalForcer#canPortalReplaceBlock(BlockPos.MutableBlockPos)}, on the block state alone.
+   */
+  private static final Predicate<BlockState> REPLACEABLE = state -> state.canBeReplaced() && state.getFluidState().isEmpty();
+
+  /**
+   * Search radius around the exit position, same as Vanilla.
+   */
+  private static final int RADIUS = 16;
+
+  /**
+   * Dimension to build the exit portal in.
+   */
+  private final ServerLevel level;
+
+  /**
+   * How to look for a spot to build the exit portal.
+   */
+  private final ExitPlacement placement;
+
+  /**
+   * Supplies the block state of each frame block.
+   */
+  private final Supplier<BlockState> frame;
+
+  /**
+   * {@link PortalBuildBatch} writing the portal blocks.
+   */
+  private final PortalBuildBatch batch;
+
+  /**
+   * Scratch position.
+   */
+  private final BlockPos.MutableBlockPos cursor = new BlockPos.MutableBlockPos();
+
+  /**
+   * Scratch position for the frame checks.
+   */
+  private final BlockPos.MutableBlockPos frameCursor = new BlockPos.MutableBlockPos();
+
+  /**
+   * Highest Y the top of the portal can be at.
+   */
+  private final int maxY;
+
+  /**
+   * Closest spot found with room on both sides of the portal, {@code null} if none has been found yet.
+   */
+  @Nullable
+  private BlockPos best = null;
+
+  /**
+   * Squared distance of {@link #best} from the exit position, {@code -1} if none has been found yet.
+   */
+  private double bestDistance = -1;
+
+  /**
+   * Closest spot found with room for the frame only, {@code null} if none has been found yet.
+   */
+  @Nullable
+  private BlockPos fallback = null;
+
+  /**
+   * Squared distance of {@link #fallback} from the exit position, {@code -1} if none has been found yet.
+   */
+  private double fallbackDistance = -1;
+
+  private ExitPortalPlacer(ServerLevel level, ExitPlacement placement, Supplier<BlockState> frame) {
+    this.level = level;
+    this.placement = placement;
+    this.frame = frame;
+    this.batch = new PortalBuildBatch(level);
+    this.maxY = Math.min(level.getMaxY(), level.getMinY() + level.getLogicalHeight() - 1);
+  }
+
+  /**
+   * Builds an exit portal as close as possible to the given position.
+   *
+   * @param level dimension to build the exit portal in.
+   * @param pos exit position.
+   * @param axis portal orientation.
+   * @param placement how to look for a spot to build the exit portal.
+   * @param frame supplies the block state of each frame block.
+   * @return exit portal interior, empty if there is no room for it.
+   */
+  public static Optional<BlockUtil.FoundRectangle> createPortal(ServerLevel level, BlockPos pos, Direction.Axis axis, ExitPlacement placement, Supplier<BlockState> frame) {
+    return new ExitPortalPlacer(level, placement, frame).create(pos, axis);
+  }
+
+  /**
+   * Builds an exit portal as close as possible to the given position.
+   *
+   * @param pos exit position.
+   * @param axis portal orientation.
+   * @return exit portal interior, empty if there is no room for it.
+   */
+  private Optional<BlockUtil.FoundRectangle> create(BlockPos pos, Direction.Axis axis) {
+    Direction direction = Direction.get(Direction.AxisDirection.POSITIVE, axis);
+    WorldBorder worldBorder = level.getWorldBorder();
+    for (BlockPos.MutableBlockPos column : BlockPos.spiralAround(pos, RADIUS, Direction.EAST, Direction.SOUTH)) {
+      if (!worldBorder.isWithinBounds(column) || !worldBorder.isWithinBounds(column.move(direction, 1))) {
+        continue;
+      }
+      column.move(direction.getOpposite(), 1);
+      scanColumn(pos, column.getX(), column.getZ(), direction);
+    }
+    if (best == null) {
+      best = fallback;
+    }
+    if (best == null) {
+      best = buildPlatform(pos, direction);
+      if (best == null) {
+        return Optional.empty();
+      }
+    }
+    for (int i = -1; i < 3; i++) {
+      for (int j = -1; j < 4; j++) {
+        if (i == -1 || i == 2 || j == -1 || j == 3) {
+          batch.set(cursor.setWithOffset(best, direction.getStepX() * i, j, direction.getStepZ() * i), frame.get());
+        }
+      }
+    }
+    BlockState portal = Blocks.NETHER_PORTAL.defaultBlockState().setValue(NetherPortalBlock.AXIS, axis);
+    for (int i = 0; i < 2; i++) {
+      for (int j = 0; j < 3; j++) {
+        batch.set(cursor.setWithOffset(best, direction.getStepX() * i, j, direction.getStepZ() * i), portal);
+      }
+    }
+    batch.flush();
+    return Optional.of(new BlockUtil.FoundRectangle(best.immutable(), 2, 3));
+  }
+
+  /**
+   * Scores the spots of the given column where the bottom of the portal interior can be, with room for the whole frame around it.<br>
+   * Every air pocket is checked, from the surface down, except for open columns with {@link ExitPlacement#HEIGHTMAP} where only the surface is.
+   *
+   * @param pos exit position.
+   * @param x X coordinate.
+   * @param z Z coordinate.
+   * @param direction portal width direction.
+   */
+  private void scanColumn(BlockPos pos, int x, int z, Direction direction) {
+    ChunkAccess chunk = level.getChunk(SectionPos.blockToSectionCoord(x), SectionPos.blockToSectionCoord(z));
+    int surface = chunk.getHeight(Heightmap.Types.MOTION_BLOCKING, x & 15, z & 15) + 1;
+    boolean heightmap = placement == ExitPlacement.HEIGHTMAP;
+    if (heightmap && surface + 4 <= maxY) {
+      // Open sky, the surface is the only spot worth checking.
+      consider(pos, new BlockPos(x, surface, z), direction);
+      return;
+    }
+    int y = Math.min(maxY, surface);
+    while (y >= level.getMinY()) {
+      if (heightmap && !chunk.getSection(chunk.getSectionIndex(y)).maybeHas(REPLACEABLE)) {
+        y = SectionPos.sectionToBlockCoord(SectionPos.blockToSectionCoord(y)) - 1;
+        continue;
+      }
+      if (isReplaceable(chunk, x, y, z)) {
+        // Same as Vanilla, go down to the bottom of the air pocket and skip pockets of 2 or 3 blocks, single blocks being the surface or a step.
+        int top = y;
+        while (y > level.getMinY() && isReplaceable(chunk, x, y - 1, z)) {
+          y--;
+        }
+        if (y + 4 <= maxY && (top - y <= 0 || top - y >= 3)) {
+          // Every pocket is scored, so that exits end up in the one closest to the exit position rather than right under the roof.
+          consider(pos, new BlockPos(x, y, z), direction);
+        }
+      }
+      y--;
+    }
+  }
+
+  /**
+   * Whether the block at the given position of the given chunk can be replaced by the portal.
+   *
+   * @param chunk chunk.
+   * @param x X coordinate.
+   * @param y Y coordinate.
+   * @param z Z coordinate.
+   * @return whether the block can be replaced.
+   */
+  private boolean isReplaceable(ChunkAccess chunk, int x, int y, int z) {
+    return REPLACEABLE.test(chunk.getBlockState(cursor.set(x, y, z)));
+  }
+
+  /**
+   * Scores a spot for the bottom left corner of the portal interior by its distance from the exit position, same as Vanilla.<br>
+   * Spots with room on both sides of the portal are preferred, the others are only kept as a fallback.
+   *
+   * @param pos exit position.
+   * @param candidate candidate spot.
+   * @param direction portal width direction.
+   */
+  private void consider(BlockPos pos, BlockPos candidate, Direction direction) {
+    if (!canHostFrame(candidate, direction, 0)) {
+      return;
+    }
+    double distance = pos.distSqr(candidate);
+    if (canHostFrame(candidate, direction, -1) && canHostFrame(candidate, direction, 1)) {
+      if (bestDistance == -1 || distance < bestDistance) {
+        best = candidate;
+        bestDistance = distance;
+      }
+    } else if (bestDistance == -1 && (fallbackDistance == -1 || distance < fallbackDistance)) {
+      fallback = candidate;
+      fallbackDistance = distance;
+    }
+  }
+
+  /**
+   * Same as {@link PortalForcer#canHostFrame(BlockPos, BlockPos.MutableBlockPos, Direction, int)}.
+   *
+   * @param pos bottom left corner of the portal interior.
+   * @param direction portal width direction.
+   * @param offset offset perpendicular to the portal.
+   * @return whether the frame fits.
+   */
+  private boolean canHostFrame(BlockPos pos, Direction direction, int offset) {
+    Direction side = direction.getClockWise();
+    for (int i = -1; i < 3; i++) {
+      for (int j = -1; j < 4; j++) {
+        frameCursor.setWithOffset(pos, direction.getStepX() * i + side.getStepX() * offset, j, direction.getStepZ() * i + side.getStepZ() * offset);
+        BlockState state = level.getBlockState(frameCursor);
+        if (j < 0 ? !state.isSolid() : !REPLACEABLE.test(state)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Builds the platform Vanilla builds when there is no spot for the portal.
+   *
+   * @param pos exit position.
+   * @param direction portal width direction.
+   * @return bottom left corner of the portal interior or {@code null} if the dimension is too short to host it.
+   */
+  private BlockPos buildPlatform(BlockPos pos, Direction direction) {
+    int minY = Math.max(level.getMinY() + 1, 70);
+    int topY = maxY - 9;
+    if (topY < minY) {
+      return null;
+    }
+    BlockPos corner = level.getWorldBorder().clampToBounds(new BlockPos(pos.getX() - direction.getStepX(), Mth.clamp(pos.getY(), minY, topY), pos.getZ() - direction.getStepZ()));
+    Direction side = direction.getClockWise();
+    for (int i = -1; i < 2; i++) {
+      for (int j = 0; j < 2; j++) {
+        for (int k = -1; k < 3; k++) {
+          cursor.setWithOffset(corner, j * direction.getStepX() + i * side.getStepX(), k, j * direction.getStepZ() + i * side.getStepZ());
+          batch.set(cursor, k < 0 ? frame.get() : Blocks.AIR.defaultBlockState());
+        }
+      }
+    }
+    return corner;
+  }
+}
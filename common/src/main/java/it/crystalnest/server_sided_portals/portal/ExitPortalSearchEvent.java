@@ -0,0 +1,48 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event for the search of an exit portal.
+ */
+@Name(ExitPortalSearchEvent.NAME)
+@Label("Exit Portal Search")
+@Category({"Minecraft", "Server Sided Portals"})
+@Description("Search of the closest portal an entity can exit from")
+public final class ExitPortalSearchEvent extends jdk.jfr.Event {
+  /**
+   * Event name.
+   */
+  public static final String NAME = "server_sided_portals.ExitPortalSearch";
+
+  @Label("Dimension")
+  @Description("Dimension searched")
+  public String dimension;
+
+  @Label("Linked Dimension")
+  @Description("Custom Dimension the exit portal must lead to, empty for Nether Portals")
+  public String linked;
+
+  @Label("X")
+  public int x;
+
+  @Label("Y")
+  public int y;
+
+  @Label("Z")
+  public int z;
+
+  @Label("Candidates Scanned")
+  @Description("Recorded Custom Portals and Nether Portal points of interest examined")
+  public int candidates;
+
+  @Label("Found")
+  public boolean found;
+
+  @Label("Result")
+  @Description("Exit portal position, if found")
+  public String result;
+}
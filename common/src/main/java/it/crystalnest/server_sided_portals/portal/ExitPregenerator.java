@@ -0,0 +1,117 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import it.crystalnest.server_sided_portals.Constants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ChunkResult;
+import net.minecraft.server.level.ServerChunkCache;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.TicketType;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.chunk.ChunkAccess;
+import net.minecraft.world.level.chunk.status.ChunkStatus;
+import net.minecraft.world.level.dimension.DimensionType;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Builds or locates the exit portal of a freshly lit Custom Portal ahead of the first travel through it.<br>
+ * Destination chunks are loaded, or generated, by the chunk system workers. Only the exit search and creation run on the server thread, once the chunks
+ * they need are ready, so the first entity travelling through the portal finds its exit without waiting on chunk generation.<br>
+ * Must be used from the server thread.
+ */
+public final class ExitPregenerator {
+  /**
+   * Chunk radius around the exit kept loaded by the ticket, same as the one Vanilla adds when an entity travels through a portal.
+   */
+  private static final int TICKET_RADIUS = 3;
+
+  /**
+   * Chunk radius around the exit that must be fully loaded before searching or building the exit portal.<br>
+   * Covers the 16 blocks Vanilla looks through to place a new portal.
+   */
+  private static final int READY_RADIUS = 1;
+
+  /**
+   * Portals whose exit is being pregenerated.
+   */
+  private static final Set<CustomPortalRecord> PENDING = new HashSet<>();
+
+  private ExitPregenerator() {}
+
+  /**
+   * Schedules the pregeneration of the exit portal of the given Custom Portal.<br>
+   * Does nothing if the pregeneration for the same portal is already underway.
+   *
+   * @param level dimension the Custom Portal has been lit in.
+   * @param record lit Custom Portal.
+   */
+  public static void schedule(ServerLevel level, CustomPortalRecord record) {
+    ServerLevel destination = level.getServer().getLevel(record.destination(level.dimension()));
+    if (destination == null || !PENDING.add(record)) {
+      return;
+    }
+    double scale = DimensionType.getTeleportationScale(level.dimensionType(), destination.dimensionType());
+    BlockPos exitPos = destination.getWorldBorder().clampToBounds(record.bottomLeft().getX() * scale, record.bottomLeft().getY(), record.bottomLeft().getZ() * scale);
+    ChunkPos center = new ChunkPos(exitPos);
+    ServerChunkCache chunkSource = destination.getChunkSource();
+    chunkSource.addRegionTicket(TicketType.PORTAL, center, TICKET_RADIUS, exitPos);
+    List<CompletableFuture<ChunkResult<ChunkAccess>>> chunks = new ArrayList<>();
+    for (int x = center.x - READY_RADIUS; x <= center.x + READY_RADIUS; x++) {
+      for (int z = center.z - READY_RADIUS; z <= center.z + READY_RADIUS; z++) {
+        chunks.add(chunkSource.getChunkFuture(x, z, ChunkStatus.FULL, true));
+      }
+    }
+    CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new)).whenCompleteAsync((ignored, error) -> {
+      PENDING.remove(record);
+      if (error != null) {
+        Constants.LOGGER.warn("Could not load the exit chunks of the Custom Portal at {} in {}", record.bottomLeft().toShortString(), level.dimension().location(), error);
+        return;
+      }
+      // Chunk loading failures are reported as results, not as exceptions.
+      for (CompletableFuture<ChunkResult<ChunkAccess>> chunk : chunks) {
+        ChunkResult<ChunkAccess> result = chunk.join();
+        if (!result.isSuccess()) {
+          Constants.LOGGER.warn("Could not load the exit chunks of the Custom Portal at {} in {}: {}", record.bottomLeft().toShortString(), level.dimension().location(), result.getError());
+          return;
+        }
+      }
+      if (level.getServer().isRunning()) {
+        build(level, destination, record, exitPos);
+      }
+    }, level.getServer());
+  }
+
+  /**
+   * Forgets any pregeneration underway.
+   */
+  public static void clear() {
+    PENDING.clear();
+  }
+
+  /**
+   * Locates the exit portal of the given Custom Portal, building a new one if there is none.
+   *
+   * @param level dimension the Custom Portal has been lit in.
+   * @param destination dimension the Custom Portal leads to.
+   * @param record lit Custom Portal.
+   * @param exitPos exit position.
+   */
+  private static void build(ServerLevel level, ServerLevel destination, CustomPortalRecord record, BlockPos exitPos) {
+    if (!level.isLoaded(record.bottomLeft()) || !level.getBlockState(record.bottomLeft()).is(Blocks.NETHER_PORTAL)) {
+      // The portal has been broken or unloaded in the meantime.
+      return;
+    }
+    CustomPortalForcer portalForcer = (CustomPortalForcer) destination.getPortalForcer();
+    TeleportContext context = new TeleportContext(level, record.dimension());
+    boolean built = portalForcer.findExitPortal(context, exitPos, destination.dimension() == Level.NETHER, destination.getWorldBorder()).isPresent() || portalForcer.createExitPortal(context, exitPos, record.axis()).isPresent();
+    if (!built) {
+      Constants.LOGGER.warn("Could not pregenerate the exit of the Custom Portal at {} in {}", record.bottomLeft().toShortString(), level.dimension().location());
+    }
+  }
+}
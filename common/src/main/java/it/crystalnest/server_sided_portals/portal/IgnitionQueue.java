@@ -0,0 +1,209 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import it.crystalnest.server_sided_portals.config.ModConfig;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.level.ServerLevel;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the portal ignition work of a dimension, whether it comes from Custom Portal Igniters or from fire.<br>
+ * Each tick, ignition attempts run right away until the configured time budget is spent. Later attempts wait in a bounded queue, deduplicated by position,
+ * and are retried at the end of the following ticks within the same budget. Attempts made by players are also rate limited per player.<br>
+ * Under normal load attempts run right away, exactly as without the queue.<br>
+ * Not thread safe, must only be used from the server thread.
+ */
+public final class IgnitionQueue {
+  /**
+   * Ticks between two removals of the throttles of players who stopped igniting.
+   */
+  private static final int PRUNE_INTERVAL = 200;
+
+  /**
+   * Deferred ignition attempts by {@link BlockPos#asLong() position}, in submission order.<br>
+   * Each attempt returns whether it lit a portal.
+   */
+  private final Long2ObjectLinkedOpenHashMap<BooleanSupplier> pending = new Long2ObjectLinkedOpenHashMap<>();
+
+  /**
+   * Rate limit of each player.
+   */
+  private final Map<UUID, Throttle> throttles = new HashMap<>();
+
+  /**
+   * Server tick the spent budget belongs to.
+   */
+  private int tick = -1;
+
+  /**
+   * Nanoseconds spent on ignition attempts during the current tick.
+   */
+  private long spent = 0;
+
+  /**
+   * Decides what to do with an ignition attempt.<br>
+   * On {@link Admission#RUN} the caller must make the attempt right away through {@link #run(Supplier)}.<br>
+   * On {@link Admission#QUEUED} the given deferred attempt, or the one already pending at the same position, will be made in a later tick.
+   *
+   * @param level dimension of the attempt.
+   * @param pos position the portal is looked for from.
+   * @param player player making the attempt, {@code null} if not made by a player.
+   * @param deferred attempt to make if it has to wait, returning whether it lit a portal.
+   * @return {@link Admission}.
+   */
+  public Admission admit(ServerLevel level, BlockPos pos, @Nullable UUID player, BooleanSupplier deferred) {
+    refresh(level);
+    ModConfig config = ModConfig.get();
+    int rate = config.ignitionsPerPlayerPerSecond();
+    if (player != null && rate > 0 && !throttles.computeIfAbsent(player, key -> new Throttle(tick, rate)).tryAcquire(tick, rate)) {
+      PortalMetrics.count(PortalMetrics.Metric.IGNITION_THROTTLED, level.dimension());
+      return Admission.THROTTLED;
+    }
+    long key = pos.asLong();
+    if (pending.containsKey(key)) {
+      return Admission.QUEUED;
+    }
+    if (pending.isEmpty() && spent < config.ignitionBudgetNanos()) {
+      return Admission.RUN;
+    }
+    if (pending.size() >= config.ignitionQueueSize()) {
+      PortalMetrics.count(PortalMetrics.Metric.IGNITION_THROTTLED, level.dimension());
+      return Admission.THROTTLED;
+    }
+    pending.put(key, deferred);
+    PortalMetrics.count(PortalMetrics.Metric.IGNITION_QUEUED, level.dimension());
+    return Admission.QUEUED;
+  }
+
+  /**
+   * Makes an admitted ignition attempt, charging its duration to the budget of the current tick.
+   *
+   * @param attempt ignition attempt.
+   * @param <T> attempt result type.
+   * @return attempt result.
+   */
+  public <T> T run(Supplier<T> attempt) {
+    long start = System.nanoTime();
+    try {
+      return attempt.get();
+    } finally {
+      spent += System.nanoTime() - start;
+    }
+  }
+
+  /**
+   * Makes the pending ignition attempts, oldest first, until the budget of the current tick is spent.<br>
+   * Called at the end of each tick of the dimension.
+   *
+   * @param level dimension.
+   */
+  public void drain(ServerLevel level) {
+    refresh(level);
+    long budget = ModConfig.get().ignitionBudgetNanos();
+    while (!pending.isEmpty() && spent < budget) {
+      BooleanSupplier attempt = pending.removeFirst();
+      run(attempt::getAsBoolean);
+    }
+    if (tick % PRUNE_INTERVAL == 0) {
+      int rate = ModConfig.get().ignitionsPerPlayerPerSecond();
+      throttles.values().removeIf(throttle -> throttle.isFull(tick, rate));
+    }
+  }
+
+  /**
+   * Resets the spent budget if a new tick has started.
+   *
+   * @param level dimension.
+   */
+  private void refresh(ServerLevel level) {
+    int current = level.getServer().getTickCount();
+    if (current != tick) {
+      tick = current;
+      spent = 0;
+    }
+  }
+
+  /**
+   * Outcome of {@link #admit(ServerLevel, BlockPos, UUID, BooleanSupplier)}.
+   */
+  public enum Admission {
+    /**
+     * The attempt must be made right away.
+     */
+    RUN,
+    /**
+     * The attempt will be made in a later tick.
+     */
+    QUEUED,
+    /**
+     * The attempt has been dropped, because either the player or the queue is over its limit.
+     */
+    THROTTLED
+  }
+
+  /**
+   * Token bucket holding up to one second worth of ignition attempts of a player.
+   */
+  private static final class Throttle {
+    /**
+     * Available attempts, in twentieths of an attempt so that refills are exact each tick.
+     */
+    private long tokens;
+
+    /**
+     * Tick of the last refill.
+     */
+    private int lastTick;
+
+    private Throttle(int tick, int rate) {
+      this.tokens = 20L * rate;
+      this.lastTick = tick;
+    }
+
+    /**
+     * Takes an attempt from the bucket, if available.
+     *
+     * @param tick current tick.
+     * @param rate attempts per second.
+     * @return whether the attempt is allowed.
+     */
+    private boolean tryAcquire(int tick, int rate) {
+      refill(tick, rate);
+      if (tokens < 20) {
+        return false;
+      }
+      tokens -= 20;
+      return true;
+    }
+
+    /**
+     * Whether the bucket is full, so that forgetting it changes nothing.
+     *
+     * @param tick current tick.
+     * @param rate attempts per second.
+     * @return whether the bucket is full.
+     */
+    private boolean isFull(int tick, int rate) {
+      refill(tick, rate);
+      return tokens >= 20L * rate;
+    }
+
+    /**
+     * Refills the bucket with {@code rate} twentieths of an attempt per elapsed tick.
+     *
+     * @param tick current tick.
+     * @param rate attempts per second.
+     */
+    private void refill(int tick, int rate) {
+      long capacity = 20L * rate;
+      tokens = Math.min(capacity, tokens + (long) Math.max(0, tick - lastTick) * rate);
+      lastTick = tick;
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import it.crystalnest.server_sided_portals.api.PortalDestination;
+import it.crystalnest.server_sided_portals.api.PortalDestinationResolver;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.Level;
+
+/**
+ * Reference {@link PortalDestinationResolver}, keeping every travel on this server.<br>
+ * Has the lowest priority, so that any other available implementation replaces it.
+ */
+public final class LocalPortalDestinationResolver implements PortalDestinationResolver {
+  @Override
+  public PortalDestination resolve(ServerLevel level, Entity entity, BlockPos pos, ResourceKey<Level> portalDimension) {
+    return PortalDestination.local(level.getServer().getLevel(PortalDestinationResolver.defaultDestination(level, pos, portalDimension)));
+  }
+
+  @Override
+  public int priority() {
+    return Integer.MIN_VALUE;
+  }
+}
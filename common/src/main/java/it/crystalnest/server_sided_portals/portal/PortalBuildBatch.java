@@ -0,0 +1,75 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+
+/**
+ * Writes the blocks of a portal being built as one batch.<br>
+ * Blocks are written without notifying their neighbours, which are then notified once when the batch is flushed. Neighbours that are part of the batch
+ * themselves are skipped, so that the blocks of the portal don't keep updating each other while it is being built.<br>
+ * Client sync and lighting need no special care, changed blocks are already sent once per tick and light updates are already queued and run in bulk.<br>
+ * Not thread safe, must only be used from the server thread.
+ */
+public final class PortalBuildBatch {
+  /**
+   * Flags to write blocks with: sync to clients, skip neighbour updates and neighbour shape updates.
+   */
+  private static final int FLAGS = Block.UPDATE_CLIENTS | Block.UPDATE_KNOWN_SHAPE;
+
+  /**
+   * Dimension the portal is built in.
+   */
+  private final ServerLevel level;
+
+  /**
+   * Written block states by {@link BlockPos#asLong() position}, in write order.
+   */
+  private final Long2ObjectMap<BlockState> written = new Long2ObjectLinkedOpenHashMap<>();
+
+  /**
+   * @param level dimension the portal is built in.
+   */
+  public PortalBuildBatch(ServerLevel level) {
+    this.level = level;
+  }
+
+  /**
+   * Writes a block, deferring the updates of its neighbours to {@link #flush()}.
+   *
+   * @param pos position.
+   * @param state block state.
+   * @return whether the block has been changed.
+   */
+  public boolean set(BlockPos pos, BlockState state) {
+    if (level.setBlock(pos, state, FLAGS)) {
+      written.put(pos.asLong(), state);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Notifies the neighbours around the written blocks, once each written block and side, skipping the ones written in this batch.
+   */
+  public void flush() {
+    BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+    BlockPos.MutableBlockPos neighbor = new BlockPos.MutableBlockPos();
+    for (Long2ObjectMap.Entry<BlockState> entry : written.long2ObjectEntrySet()) {
+      pos.set(entry.getLongKey());
+      BlockState state = entry.getValue();
+      for (Direction direction : Direction.values()) {
+        neighbor.setWithOffset(pos, direction);
+        if (!written.containsKey(neighbor.asLong())) {
+          level.neighborShapeChanged(direction.getOpposite(), neighbor, pos, state, Block.UPDATE_ALL, Block.UPDATE_LIMIT);
+          level.neighborChanged(neighbor, state.getBlock(), null);
+        }
+      }
+    }
+    written.clear();
+  }
+}
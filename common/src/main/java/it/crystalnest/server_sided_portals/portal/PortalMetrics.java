@@ -0,0 +1,347 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the portal subsystem, by dimension.<br>
+ * Recording is off by default and is toggled at runtime, while off each instrumented path pays a single volatile read.<br>
+ * Instrumented paths call {@link #start()} before the measured work and {@link #stop(Metric, ResourceKey, long)} after it, or {@link #count(Metric, ResourceKey)} for
+ * plain counters.<br>
+ * Thread safe.
+ */
+public final class PortalMetrics {
+  /**
+   * Start time returned while recording is off.
+   */
+  private static final long DISABLED = Long.MIN_VALUE;
+
+  /**
+   * Recorded values by metric and dimension.
+   */
+  private static final Map<Metric, Map<ResourceKey<Level>, Histogram>> HISTOGRAMS = new EnumMap<>(Metric.class);
+
+  static {
+    for (Metric metric : Metric.values()) {
+      HISTOGRAMS.put(metric, new ConcurrentHashMap<>());
+    }
+  }
+
+  /**
+   * Whether recording is on.
+   */
+  private static volatile boolean enabled = false;
+
+  /**
+   * {@link System#nanoTime()} of the last reset.
+   */
+  private static volatile long since = System.nanoTime();
+
+  private PortalMetrics() {}
+
+  /**
+   * Whether recording is on.
+   *
+   * @return whether recording is on.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Turns recording on or off.<br>
+   * Turning recording on discards previously recorded values, so that rates are computed over the recorded time only.
+   *
+   * @param enabled whether recording should be on.
+   */
+  public static void setEnabled(boolean enabled) {
+    if (enabled && !PortalMetrics.enabled) {
+      reset();
+    }
+    PortalMetrics.enabled = enabled;
+  }
+
+  /**
+   * Discards all recorded values.
+   */
+  public static void reset() {
+    HISTOGRAMS.values().forEach(Map::clear);
+    since = System.nanoTime();
+  }
+
+  /**
+   * Seconds elapsed since the last reset.
+   *
+   * @return elapsed seconds.
+   */
+  public static double elapsedSeconds() {
+    return (System.nanoTime() - since) / 1_000_000_000D;
+  }
+
+  /**
+   * Starts measuring a timed metric.
+   *
+   * @return start time to pass to {@link #stop(Metric, ResourceKey, long)}.
+   */
+  public static long start() {
+    return enabled ? System.nanoTime() : DISABLED;
+  }
+
+  /**
+   * Records the time elapsed since the given start time.<br>
+   * Does nothing if recording was off when the measure started.
+   *
+   * @param metric timed metric.
+   * @param dimension dimension the value belongs to.
+   * @param start value returned by {@link #start()}.
+   */
+  public static void stop(Metric metric, ResourceKey<Level> dimension, long start) {
+    if (start != DISABLED) {
+      histogram(metric, dimension).record(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Counts one occurrence of the given metric.
+   *
+   * @param metric metric.
+   * @param dimension dimension the occurrence belongs to.
+   */
+  public static void count(Metric metric, ResourceKey<Level> dimension) {
+    if (enabled) {
+      histogram(metric, dimension).record(0);
+    }
+  }
+
+  /**
+   * Takes a snapshot of all recorded values, ordered by metric and dimension.
+   *
+   * @return recorded values.
+   */
+  public static List<Sample> snapshot() {
+    List<Sample> samples = new ArrayList<>();
+    HISTOGRAMS.forEach((metric, histograms) -> histograms.entrySet().stream()
+      .sorted(Map.Entry.comparingByKey(Comparator.comparing(ResourceKey::location)))
+      .forEach(entry -> samples.add(entry.getValue().sample(metric, entry.getKey())))
+    );
+    return samples;
+  }
+
+  /**
+   * Returns the histogram for the given metric and dimension, creating it if needed.
+   *
+   * @param metric metric.
+   * @param dimension dimension.
+   * @return {@link Histogram}.
+   */
+  private static Histogram histogram(Metric metric, ResourceKey<Level> dimension) {
+    Map<ResourceKey<Level>, Histogram> histograms = HISTOGRAMS.get(metric);
+    Histogram histogram = histograms.get(dimension);
+    return histogram == null ? histograms.computeIfAbsent(dimension, key -> new Histogram(metric.timed)) : histogram;
+  }
+
+  /**
+   * Instrumented paths of the portal subsystem.
+   */
+  public enum Metric {
+    /**
+     * Custom Portal frame scans of {@link net.minecraft.world.level.portal.PortalShape#findAnyShape}, by dimension scanned.
+     */
+    SHAPE_SCAN("shape_scan", true),
+    /**
+     * Lookups of the dimension a Custom Portal leads to, by dimension of the portal.
+     */
+    DIMENSION_LOOKUP("dimension_lookup", true),
+    /**
+     * Searches of the closest recorded exit portal, by Custom Dimension searched for.
+     */
+    EXIT_SEARCH("exit_search", true),
+    /**
+     * Nether Portal points of interest rejected because they lead to another dimension, by dimension the entity comes from.
+     */
+    POI_REJECTED("poi_rejected", false),
+    /**
+     * Entities travelling through Custom Portals, by destination.
+     */
+    TELEPORT("teleport", false),
+    /**
+     * Entities handed off to another server through Custom Portals, by destination.
+     */
+    REMOTE_HANDOFF("remote_handoff", false),
+    /**
+     * Exit portals answered from the {@link CustomPortalLinks} instead of searched, by destination.
+     */
+    LINK_HIT("link_hit", false),
+    /**
+     * Custom Portal Igniters used on Custom Portal Frames, by dimension they are used in.
+     */
+    ITEM_IGNITION("item_ignition", true),
+    /**
+     * Ignition attempts deferred to a later tick by the {@link IgnitionQueue}, by dimension they are made in.
+     */
+    IGNITION_QUEUED("ignition_queued", false),
+    /**
+     * Ignition attempts dropped by the {@link IgnitionQueue}, by dimension they are made in.
+     */
+    IGNITION_THROTTLED("ignition_throttled", false),
+    /**
+     * Fire placement checks against Custom Portal Frames, by dimension the fire is placed in.
+     */
+    FIRE_FRAME_CHECK("fire_frame_check", false),
+    /**
+     * Portal verifications left unknown by the {@link PortalVerifier} because they would need to load chunks, by dimension of the portal.
+     */
+    VERIFY_UNKNOWN("verify_unknown", false);
+
+    /**
+     * Metric name.
+     */
+    private final String name;
+
+    /**
+     * Whether the metric records latencies, otherwise it is a plain counter.
+     */
+    private final boolean timed;
+
+    Metric(String name, boolean timed) {
+      this.name = name;
+      this.timed = timed;
+    }
+
+    /**
+     * Metric name.
+     *
+     * @return metric name.
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Whether the metric records latencies, otherwise it is a plain counter.
+     *
+     * @return whether the metric is timed.
+     */
+    public boolean isTimed() {
+      return timed;
+    }
+  }
+
+  /**
+   * Snapshot of the values recorded for a metric in a dimension.<br>
+   * Latencies are in nanoseconds and are all {@code 0} for plain counters.<br>
+   * Percentiles are the upper bound of the power of two bucket they fall in.
+   *
+   * @param metric metric.
+   * @param dimension dimension.
+   * @param count amount of recorded values.
+   * @param mean mean latency.
+   * @param p50 median latency.
+   * @param p99 99th percentile latency.
+   * @param max maximum latency.
+   */
+  public record Sample(Metric metric, ResourceKey<Level> dimension, long count, double mean, long p50, long p99, long max) {}
+
+  /**
+   * Lock-free histogram with power of two buckets.
+   */
+  private static final class Histogram {
+    /**
+     * Amount of recorded values.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Sum of recorded values.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Maximum recorded value.
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Bucket {@code i} counts values below {@code 2^i} and not below {@code 2^(i-1)}, {@code null} for plain counters.
+     */
+    private final LongAdder[] buckets;
+
+    private Histogram(boolean timed) {
+      if (timed) {
+        buckets = new LongAdder[Long.SIZE];
+        for (int i = 0; i < buckets.length; i++) {
+          buckets[i] = new LongAdder();
+        }
+      } else {
+        buckets = null;
+      }
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value value, ignored for plain counters.
+     */
+    private void record(long value) {
+      count.increment();
+      if (buckets != null) {
+        long clamped = Math.max(0, value);
+        sum.add(clamped);
+        max.accumulate(clamped);
+        buckets[Math.min(Long.SIZE - Long.numberOfLeadingZeros(clamped), buckets.length - 1)].increment();
+      }
+    }
+
+    /**
+     * Takes a snapshot of the recorded values.
+     *
+     * @param metric metric.
+     * @param dimension dimension.
+     * @return {@link Sample}.
+     */
+    private Sample sample(Metric metric, ResourceKey<Level> dimension) {
+      long total = count.sum();
+      if (buckets == null || total == 0) {
+        return new Sample(metric, dimension, total, 0, 0, 0, 0);
+      }
+      long[] counts = new long[buckets.length];
+      for (int i = 0; i < buckets.length; i++) {
+        counts[i] = buckets[i].sum();
+      }
+      long peak = max.get();
+      return new Sample(metric, dimension, total, (double) sum.sum() / total, Math.min(percentile(counts, 0.50), peak), Math.min(percentile(counts, 0.99), peak), peak);
+    }
+
+    /**
+     * Upper bound of the bucket the given percentile falls in.
+     *
+     * @param counts bucket counts.
+     * @param percentile percentile, between 0 and 1.
+     * @return percentile upper bound.
+     */
+    private static long percentile(long[] counts, double percentile) {
+      long total = 0;
+      for (long bucket : counts) {
+        total += bucket;
+      }
+      long rank = Math.max(1, (long) Math.ceil(percentile * total));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return i == 0 ? 0 : (1L << Math.min(i, Long.SIZE - 2)) - 1;
+        }
+      }
+      return Long.MAX_VALUE;
+    }
+  }
+}
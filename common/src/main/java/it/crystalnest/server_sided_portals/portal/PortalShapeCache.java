@@ -0,0 +1,323 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.core.SectionPos;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.levelgen.structure.BoundingBox;
+import net.minecraft.world.level.portal.PortalShape;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongConsumer;
+
+/**
+ * Bounded LRU cache of {@link PortalShape#findAnyShape} results of a dimension, negative results included.<br>
+ * Each entry is invalidated as soon as a block inside the area its result depends on changes, or when any chunk of that area unloads.<br>
+ * While a portal is being {@link #fill(BoundingBox, Runnable) filled}, changes inside it invalidate the cache only once, when the fill is over.<br>
+ * Not thread safe, must only be used from the server thread, except for {@link #invalidateLater(BlockPos)}.
+ */
+public final class PortalShapeCache {
+  /**
+   * Maximum amount of cached results for each axis.
+   */
+  public static final int CAPACITY = 1024;
+
+  /**
+   * How far from the initial position a portal scan can read blocks, used to bound negative results.
+   */
+  public static final int SCAN_REACH = 22;
+
+  /**
+   * Cached results for portals along {@link Direction.Axis#X}, in access order.
+   */
+  private final Long2ObjectLinkedOpenHashMap<Entry> xEntries = new Long2ObjectLinkedOpenHashMap<>();
+
+  /**
+   * Cached results for portals along {@link Direction.Axis#Z}, in access order.
+   */
+  private final Long2ObjectLinkedOpenHashMap<Entry> zEntries = new Long2ObjectLinkedOpenHashMap<>();
+
+  /**
+   * Entries by {@link SectionPos#asLong() section}, an entry is present in every section its bounds span.
+   */
+  private final Long2ObjectMap<List<Entry>> bySection = new Long2ObjectOpenHashMap<>();
+
+  /**
+   * Area of the portal being filled, whose invalidation is deferred to the end of the fill.
+   */
+  @Nullable
+  private BoundingBox filling = null;
+
+  /**
+   * {@link BlockPos#asLong() Positions} changed off the server thread, invalidated by the server thread on its next access.
+   */
+  private final Queue<Long> changedElsewhere = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Returns the cached result for the given position and axis.
+   *
+   * @param pos initial position.
+   * @param axis portal orientation.
+   * @return cached {@link PortalShape} or {@code null} if there is none.
+   */
+  @Nullable
+  public PortalShape get(BlockPos pos, Direction.Axis axis) {
+    drain();
+    Entry entry = entries(axis).getAndMoveToLast(pos.asLong());
+    return entry == null || isFilling(entry.bounds) ? null : entry.shape;
+  }
+
+  /**
+   * Caches the result for the given position and axis, evicting the least recently used entry if the cache is full.
+   *
+   * @param pos initial position.
+   * @param axis portal orientation.
+   * @param shape {@link PortalShape} to cache.
+   */
+  public void put(BlockPos pos, Direction.Axis axis, PortalShape shape) {
+    BoundingBox bounds = bounds(pos, axis, shape);
+    if (isFilling(bounds)) {
+      return;
+    }
+    Long2ObjectLinkedOpenHashMap<Entry> entries = entries(axis);
+    Entry previous = entries.remove(pos.asLong());
+    if (previous != null) {
+      unindex(previous);
+    }
+    while (entries.size() >= CAPACITY) {
+      unindex(entries.removeFirst());
+    }
+    Entry entry = new Entry(pos.asLong(), axis, shape, bounds);
+    entries.putAndMoveToLast(entry.key, entry);
+    index(entry);
+    // The shape may have been computed while a block it depends on was changing off the server thread.
+    drain();
+  }
+
+  /**
+   * Invalidates every entry depending on the block at the given position.
+   *
+   * @param pos changed position.
+   */
+  public void invalidate(BlockPos pos) {
+    if (filling != null && filling.isInside(pos)) {
+      return;
+    }
+    List<Entry> candidates = bySection.get(SectionPos.asLong(pos));
+    if (candidates != null) {
+      List<Entry> invalid = null;
+      for (Entry entry : candidates) {
+        if (entry.bounds.isInside(pos)) {
+          if (invalid == null) {
+            invalid = new ArrayList<>();
+          }
+          invalid.add(entry);
+        }
+      }
+      if (invalid != null) {
+        invalid.forEach(this::remove);
+      }
+    }
+  }
+
+  /**
+   * Invalidates every entry depending on the block at the given position, changed off the server thread.<br>
+   * Thread safe, the invalidation happens on the server thread before the cache is accessed again.
+   *
+   * @param pos changed position.
+   */
+  public void invalidateLater(BlockPos pos) {
+    changedElsewhere.add(pos.asLong());
+  }
+
+  /**
+   * Invalidates the entries depending on the blocks changed off the server thread.
+   */
+  private void drain() {
+    if (!changedElsewhere.isEmpty()) {
+      BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+      Long changed;
+      while ((changed = changedElsewhere.poll()) != null) {
+        invalidate(pos.set(changed));
+      }
+    }
+  }
+
+  /**
+   * Invalidates every entry depending on any block inside the given area.
+   *
+   * @param area changed area.
+   */
+  public void invalidate(BoundingBox area) {
+    Set<Entry> invalid = new ReferenceOpenHashSet<>();
+    forEachSection(area, section -> {
+      List<Entry> candidates = bySection.get(section);
+      if (candidates != null) {
+        for (Entry entry : candidates) {
+          if (entry.bounds.intersects(area)) {
+            invalid.add(entry);
+          }
+        }
+      }
+    });
+    invalid.forEach(this::remove);
+  }
+
+  /**
+   * Fills a portal, invalidating the entries depending on its area once at the end instead of once per placed block.<br>
+   * During the fill, entries depending on the area are neither answered nor stored, so that nothing reacting to the placed blocks sees a stale shape.
+   *
+   * @param area area of the portal.
+   * @param fill places the portal blocks.
+   */
+  public void fill(BoundingBox area, Runnable fill) {
+    BoundingBox previous = filling;
+    filling = previous == null ? area : BoundingBox.encapsulatingBoxes(List.of(previous, area)).orElse(area);
+    try {
+      fill.run();
+    } finally {
+      filling = previous;
+      invalidate(area);
+    }
+  }
+
+  /**
+   * Invalidates every entry depending on any block of the given chunk.
+   *
+   * @param chunk chunk position.
+   * @param minSection minimum section Y of the dimension.
+   * @param maxSection maximum section Y of the dimension.
+   */
+  public void invalidate(ChunkPos chunk, int minSection, int maxSection) {
+    Set<Entry> invalid = new ReferenceOpenHashSet<>();
+    for (int y = minSection; y <= maxSection; y++) {
+      List<Entry> candidates = bySection.get(SectionPos.asLong(chunk.x, y, chunk.z));
+      if (candidates != null) {
+        invalid.addAll(candidates);
+      }
+    }
+    invalid.forEach(this::remove);
+  }
+
+  /**
+   * Clears the cache.
+   */
+  public void clear() {
+    changedElsewhere.clear();
+    xEntries.clear();
+    zEntries.clear();
+    bySection.clear();
+  }
+
+  /**
+   * Whether the given area overlaps the portal being filled.
+   *
+   * @param bounds area.
+   * @return whether the area overlaps the portal being filled.
+   */
+  private boolean isFilling(BoundingBox bounds) {
+    return filling != null && filling.intersects(bounds);
+  }
+
+  /**
+   * Returns the entries for the given axis.
+   *
+   * @param axis portal orientation.
+   * @return entries for the given axis.
+   */
+  private Long2ObjectLinkedOpenHashMap<Entry> entries(Direction.Axis axis) {
+    return axis == Direction.Axis.Z ? zEntries : xEntries;
+  }
+
+  /**
+   * Removes the given entry.
+   *
+   * @param entry entry to remove.
+   */
+  private void remove(Entry entry) {
+    Long2ObjectLinkedOpenHashMap<Entry> entries = entries(entry.axis);
+    if (entries.get(entry.key) == entry) {
+      entries.remove(entry.key);
+    }
+    unindex(entry);
+  }
+
+  /**
+   * Adds the entry to the section index.
+   *
+   * @param entry entry to index.
+   */
+  private void index(Entry entry) {
+    forEachSection(entry.bounds, section -> bySection.computeIfAbsent(section, key -> new ArrayList<>()).add(entry));
+  }
+
+  /**
+   * Removes the entry from the section index.
+   *
+   * @param entry entry to unindex.
+   */
+  private void unindex(Entry entry) {
+    forEachSection(entry.bounds, section -> {
+      List<Entry> list = bySection.get(section);
+      if (list != null) {
+        list.remove(entry);
+        if (list.isEmpty()) {
+          bySection.remove(section);
+        }
+      }
+    });
+  }
+
+  /**
+   * Calls the given consumer with every section the given bounds span.
+   *
+   * @param bounds bounds.
+   * @param consumer section consumer.
+   */
+  private static void forEachSection(BoundingBox bounds, LongConsumer consumer) {
+    for (int x = SectionPos.blockToSectionCoord(bounds.minX()); x <= SectionPos.blockToSectionCoord(bounds.maxX()); x++) {
+      for (int y = SectionPos.blockToSectionCoord(bounds.minY()); y <= SectionPos.blockToSectionCoord(bounds.maxY()); y++) {
+        for (int z = SectionPos.blockToSectionCoord(bounds.minZ()); z <= SectionPos.blockToSectionCoord(bounds.maxZ()); z++) {
+          consumer.accept(SectionPos.asLong(x, y, z));
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes the area the given result depends on.<br>
+   * For valid portals it's the frame bounding box (plus the initial position), otherwise it's the whole area a scan can read.
+   *
+   * @param pos initial position.
+   * @param axis portal orientation.
+   * @param shape {@link PortalShape}.
+   * @return bounds of the area the result depends on.
+   */
+  private static BoundingBox bounds(BlockPos pos, Direction.Axis axis, PortalShape shape) {
+    if (shape.isValid()) {
+      return ((CustomPortalShape) shape).frameBounds().encapsulate(pos);
+    }
+    int dx = axis == Direction.Axis.X ? SCAN_REACH : 0;
+    int dz = axis == Direction.Axis.Z ? SCAN_REACH : 0;
+    return new BoundingBox(pos.getX() - dx, pos.getY() - SCAN_REACH, pos.getZ() - dz, pos.getX() + dx, pos.getY() + SCAN_REACH, pos.getZ() + dz);
+  }
+
+  /**
+   * Cache entry.
+   *
+   * @param key packed initial position.
+   * @param axis portal orientation.
+   * @param shape cached {@link PortalShape}.
+   * @param bounds area the result depends on.
+   */
+  private record Entry(long key, Direction.Axis axis, PortalShape shape, BoundingBox bounds) {}
+}
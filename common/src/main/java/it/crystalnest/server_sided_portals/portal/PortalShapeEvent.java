@@ -0,0 +1,47 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event for a Custom Portal frame scan.
+ */
+@Name(PortalShapeEvent.NAME)
+@Label("Custom Portal Shape Detection")
+@Category({"Minecraft", "Server Sided Portals"})
+@Description("Scan of a portal frame against the Custom Portal definitions")
+public final class PortalShapeEvent extends jdk.jfr.Event {
+  /**
+   * Event name.
+   */
+  public static final String NAME = "server_sided_portals.PortalShape";
+
+  @Label("Dimension")
+  @Description("Dimension scanned")
+  public String dimension;
+
+  @Label("X")
+  public int x;
+
+  @Label("Y")
+  public int y;
+
+  @Label("Z")
+  public int z;
+
+  @Label("Axis")
+  public String axis;
+
+  @Label("Dimensions Tried")
+  @Description("Amount of Custom Dimensions whose frame was matched against")
+  public int candidates;
+
+  @Label("Blocks Read")
+  public int blocksRead;
+
+  @Label("Matched Dimension")
+  @Description("Custom Dimension the frame is for, if it is a valid Custom Portal")
+  public String matched;
+}
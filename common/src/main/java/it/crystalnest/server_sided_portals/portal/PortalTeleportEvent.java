@@ -0,0 +1,39 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event for the resolution of a portal destination.
+ */
+@Name(PortalTeleportEvent.NAME)
+@Label("Portal Teleport Resolution")
+@Category({"Minecraft", "Server Sided Portals"})
+@Description("Resolution of where an entity travelling through a portal ends up, exit search and creation included")
+public final class PortalTeleportEvent extends jdk.jfr.Event {
+  /**
+   * Event name.
+   */
+  public static final String NAME = "server_sided_portals.PortalTeleport";
+
+  @Label("Entity Type")
+  public String entity;
+
+  @Label("Origin")
+  public String origin;
+
+  @Label("Destination")
+  @Description("Destination dimension, empty if the entity could not travel")
+  public String destination;
+
+  @Label("X")
+  public int x;
+
+  @Label("Y")
+  public int y;
+
+  @Label("Z")
+  public int z;
+}
@@ -0,0 +1,158 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import it.crystalnest.server_sided_portals.api.CustomPortalChecker;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.BlockUtil;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.Level;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Destinations resolved during the current server tick for the portals of a dimension.<br>
+ * Entities entering the same portal in the same tick, e.g. from item sorters or mob farms, share the portal dimension lookup and the exit portal search
+ * instead of each repeating them.<br>
+ * Everything is forgotten as soon as a new tick starts, so that changes to portals are picked up on the next one.<br>
+ * Not thread safe, must only be used from the server thread.
+ */
+public final class PortalTransitMemo {
+  /**
+   * Server tick the memoized values belong to.
+   */
+  private int tick = -1;
+
+  /**
+   * Dimension the portal at each {@link BlockPos#asLong() position} leads to, as returned by {@link CustomPortalChecker#getPortalDimension(Level, BlockPos)}.
+   */
+  private final Long2ObjectMap<ResourceKey<Level>> dimensions = new Long2ObjectOpenHashMap<>();
+
+  /**
+   * Exit portal of each entrance Custom Portal.
+   */
+  private final Map<CustomPortalRecord, Exit> exits = new HashMap<>();
+
+  /**
+   * Returns the dimension the portal at the given position leads to, looking it up only once per tick.
+   *
+   * @param level dimension of the portal.
+   * @param pos position.
+   * @return portal related dimension.
+   */
+  public ResourceKey<Level> portalDimension(ServerLevel level, BlockPos pos) {
+    refresh(level);
+    long key = pos.asLong();
+    ResourceKey<Level> dimension = dimensions.get(key);
+    if (dimension == null) {
+      dimension = CustomPortalChecker.getPortalDimension(level, pos);
+      dimensions.put(key, dimension);
+    }
+    return dimension;
+  }
+
+  /**
+   * Returns the exit portal of the given entrance resolved during this tick.
+   *
+   * @param level dimension of the entrance.
+   * @param entrance entrance Custom Portal.
+   * @return the resolved {@link Exit} or {@code null} if it has not been resolved during this tick.
+   */
+  @Nullable
+  public Exit exit(ServerLevel level, CustomPortalRecord entrance) {
+    refresh(level);
+    return exits.get(entrance);
+  }
+
+  /**
+   * Remembers the exit portal found for the given entrance.
+   *
+   * @param level dimension of the entrance.
+   * @param entrance entrance Custom Portal.
+   * @param exit closest exit portal block, if any.
+   */
+  public void putExit(ServerLevel level, CustomPortalRecord entrance, Optional<BlockPos> exit) {
+    refresh(level);
+    exits.put(entrance, new Exit(exit));
+  }
+
+  /**
+   * Remembers the exit portal created for the given entrance.
+   *
+   * @param level dimension of the entrance.
+   * @param entrance entrance Custom Portal.
+   * @param rectangle created exit portal interior.
+   */
+  public void putExit(ServerLevel level, CustomPortalRecord entrance, BlockUtil.FoundRectangle rectangle) {
+    refresh(level);
+    Exit exit = new Exit(Optional.of(rectangle.minCorner));
+    exit.rectangle = rectangle;
+    exits.put(entrance, exit);
+  }
+
+  /**
+   * Forgets everything if a new tick has started.
+   *
+   * @param level dimension these values belong to.
+   */
+  private void refresh(ServerLevel level) {
+    int current = level.getServer().getTickCount();
+    if (current != tick) {
+      tick = current;
+      dimensions.clear();
+      exits.clear();
+    }
+  }
+
+  /**
+   * Exit portal resolved for an entrance Custom Portal.
+   */
+  public static final class Exit {
+    /**
+     * Closest exit portal block, if any.
+     */
+    private final Optional<BlockPos> pos;
+
+    /**
+     * Exit portal interior, computed by the first entity travelling through.
+     */
+    @Nullable
+    private BlockUtil.FoundRectangle rectangle = null;
+
+    private Exit(Optional<BlockPos> pos) {
+      this.pos = pos;
+    }
+
+    /**
+     * Closest exit portal block, if any.
+     *
+     * @return exit portal block.
+     */
+    public Optional<BlockPos> pos() {
+      return pos;
+    }
+
+    /**
+     * Exit portal interior, if already computed.
+     *
+     * @return exit portal interior.
+     */
+    @Nullable
+    public BlockUtil.FoundRectangle rectangle() {
+      return rectangle;
+    }
+
+    /**
+     * Remembers the exit portal interior.
+     *
+     * @param rectangle exit portal interior.
+     */
+    public void setRectangle(BlockUtil.FoundRectangle rectangle) {
+      this.rectangle = rectangle;
+    }
+  }
+}
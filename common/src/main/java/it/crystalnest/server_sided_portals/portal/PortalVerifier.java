@@ -0,0 +1,108 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import it.crystalnest.server_sided_portals.api.CustomPortalChecker;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.core.SectionPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerChunkCache;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.NetherPortalBlock;
+import net.minecraft.world.level.chunk.LevelChunk;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Verifies which dimension a portal leads to without ever loading a chunk.<br>
+ * Recorded Custom Portals are answered right away. Other portals are scanned only when every chunk the scan can read is already loaded, otherwise the
+ * result is {@link Result#UNKNOWN} and the caller decides how to proceed.<br>
+ * Must only be used from the server thread.
+ */
+public final class PortalVerifier {
+  private PortalVerifier() {}
+
+  /**
+   * Verifies whether the portal at the given position leads to the given dimension.
+   *
+   * @param level dimension of the portal.
+   * @param pos portal block position.
+   * @param dimension expected portal dimension.
+   * @return {@link Result}.
+   */
+  public static Result verify(ServerLevel level, BlockPos pos, ResourceKey<Level> dimension) {
+    ResourceKey<Level> actual = portalDimension(level, pos);
+    if (actual == null) {
+      return Result.UNKNOWN;
+    }
+    return actual == dimension ? Result.MATCH : Result.MISMATCH;
+  }
+
+  /**
+   * Returns the dimension the portal at the given position leads to, as {@link CustomPortalChecker#getPortalDimension(Level, BlockPos)} would, without
+   * loading any chunk.
+   *
+   * @param level dimension of the portal.
+   * @param pos portal block position.
+   * @return portal dimension or {@code null} if it can't be known without loading chunks.
+   */
+  @Nullable
+  public static ResourceKey<Level> portalDimension(ServerLevel level, BlockPos pos) {
+    if (CustomPortalRegistry.get(level.getServer()).isEmpty()) {
+      return CustomPortalChecker.getPortalDimension(level, pos);
+    }
+    ServerChunkCache chunkSource = level.getChunkSource();
+    LevelChunk chunk = chunkSource.getChunkNow(SectionPos.blockToSectionCoord(pos.getX()), SectionPos.blockToSectionCoord(pos.getZ()));
+    CustomPortalRecord record = CustomPortalRecords.get(level).find(pos);
+    if (record != null && (chunk == null || chunk.getBlockState(pos).is(Blocks.NETHER_PORTAL))) {
+      // A recorded portal can only break while loaded, which drops its record, so an unloaded one is still intact.
+      return record.dimension();
+    }
+    if (chunk == null || !isScanAreaLoaded(chunkSource, pos, chunk.getBlockState(pos).getOptionalValue(NetherPortalBlock.AXIS).orElse(Direction.Axis.X))) {
+      PortalMetrics.count(PortalMetrics.Metric.VERIFY_UNKNOWN, level.dimension());
+      return null;
+    }
+    // Every chunk the scan can read is loaded, so the regular lookup won't load any.
+    return CustomPortalChecker.getPortalDimension(level, pos);
+  }
+
+  /**
+   * Whether every chunk a frame scan from the given position can read is loaded.<br>
+   * Scans stay within {@link PortalShapeCache#SCAN_REACH} blocks along the axis and vertical reach never leaves the chunk column.
+   *
+   * @param chunkSource chunk source.
+   * @param pos scan start position.
+   * @param axis portal axis.
+   * @return whether the scan area is loaded.
+   */
+  private static boolean isScanAreaLoaded(ServerChunkCache chunkSource, BlockPos pos, Direction.Axis axis) {
+    int x = SectionPos.blockToSectionCoord(pos.getX());
+    int z = SectionPos.blockToSectionCoord(pos.getZ());
+    int from = SectionPos.blockToSectionCoord(pos.get(axis) - PortalShapeCache.SCAN_REACH);
+    int to = SectionPos.blockToSectionCoord(pos.get(axis) + PortalShapeCache.SCAN_REACH);
+    for (int i = from; i <= to; i++) {
+      if (chunkSource.getChunkNow(axis == Direction.Axis.X ? i : x, axis == Direction.Axis.Z ? i : z) == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Outcome of a portal verification.
+   */
+  public enum Result {
+    /**
+     * The portal leads to the expected dimension.
+     */
+    MATCH,
+    /**
+     * The portal leads to another dimension.
+     */
+    MISMATCH,
+    /**
+     * The portal can't be verified without loading chunks.
+     */
+    UNKNOWN
+  }
+}
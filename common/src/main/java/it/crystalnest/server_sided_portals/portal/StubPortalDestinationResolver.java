@@ -0,0 +1,91 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import it.crystalnest.server_sided_portals.Constants;
+import it.crystalnest.server_sided_portals.api.PortalDestination;
+import it.crystalnest.server_sided_portals.api.PortalDestinationResolver;
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.Level;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Stand-in {@link PortalDestinationResolver} for tests, simulating Custom Dimensions hosted on other servers without any other server.<br>
+ * Travels to remote dimensions are handed off to nowhere: the entity stays where it is and the handoff is recorded, so that tests can check what would have
+ * been sent to the other server. Travels to any other dimension stay on this server, as with the {@link LocalPortalDestinationResolver}.<br>
+ * Not registered by default, test setups enable it by listing it in their own {@code META-INF/services} file.<br>
+ * Must only be used from the server thread.
+ */
+public final class StubPortalDestinationResolver implements PortalDestinationResolver {
+  /**
+   * Dimensions simulated as remote, {@code null} for every Custom Dimension.
+   */
+  @Nullable
+  private final Set<ResourceKey<Level>> remote;
+
+  /**
+   * Recorded handoffs, oldest first.
+   */
+  private final List<Handoff> handoffs = new ArrayList<>();
+
+  /**
+   * Simulates every Custom Dimension as remote.
+   */
+  public StubPortalDestinationResolver() {
+    this(null);
+  }
+
+  /**
+   * Simulates the given dimensions as remote.
+   *
+   * @param remote dimensions simulated as remote, {@code null} for every Custom Dimension.
+   */
+  public StubPortalDestinationResolver(@Nullable Set<ResourceKey<Level>> remote) {
+    this.remote = remote == null ? null : Set.copyOf(remote);
+  }
+
+  @Override
+  public PortalDestination resolve(ServerLevel level, Entity entity, BlockPos pos, ResourceKey<Level> portalDimension) {
+    ResourceKey<Level> destination = PortalDestinationResolver.defaultDestination(level, pos, portalDimension);
+    if (remote == null ? destination == portalDimension : remote.contains(destination)) {
+      BlockPos entrance = pos.immutable();
+      return PortalDestination.remote(destination, traveller -> {
+        Constants.LOGGER.debug("Simulated handoff of {} to {} through the portal at {}", traveller, destination.location(), entrance.toShortString());
+        handoffs.add(new Handoff(traveller.getUUID(), level.dimension(), entrance, destination));
+      });
+    }
+    return PortalDestination.local(level.getServer().getLevel(destination));
+  }
+
+  /**
+   * Recorded handoffs, oldest first.
+   *
+   * @return recorded handoffs.
+   */
+  public List<Handoff> handoffs() {
+    return List.copyOf(handoffs);
+  }
+
+  /**
+   * Forgets the recorded handoffs.
+   */
+  public void clear() {
+    handoffs.clear();
+  }
+
+  /**
+   * Handoff recorded in place of a travel to another server.
+   *
+   * @param entity UUID of the entity.
+   * @param origin dimension of the portal.
+   * @param entrance entrance position.
+   * @param destination destination dimension.
+   */
+  public record Handoff(UUID entity, ResourceKey<Level> origin, BlockPos entrance, ResourceKey<Level> destination) {}
+}
@@ -0,0 +1,33 @@
+package it.crystalnest.server_sided_portals.portal;
+
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.Level;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * State of a travel through a portal, handed to the {@link CustomPortalForcer} of the destination along with each exit portal search and creation.
+ *
+ * @param origin dimension the entity comes from.
+ * @param portalDimension Custom Dimension of the portal the entity is going through, {@code null} for Nether Portals.
+ */
+public record TeleportContext(ServerLevel origin, @Nullable ResourceKey<Level> portalDimension) {
+  /**
+   * Dimension the entity comes from.
+   *
+   * @return origin dimension key.
+   */
+  public ResourceKey<Level> originDimension() {
+    return origin.dimension();
+  }
+
+  /**
+   * Origin the exit portal built or searched in the given dimension must have, see {@link CustomPortalRecord#origin()}.
+   *
+   * @param destination dimension the entity is going to.
+   * @return exit portal origin.
+   */
+  public ResourceKey<Level> exitOrigin(ResourceKey<Level> destination) {
+    return destination == portalDimension ? originDimension() : destination;
+  }
+}
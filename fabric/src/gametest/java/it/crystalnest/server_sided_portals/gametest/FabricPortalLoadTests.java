@@ -0,0 +1,20 @@
+package it.crystalnest.server_sided_portals.gametest;
+
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.gametest.framework.GameTest;
+import net.minecraft.gametest.framework.GameTestHelper;
+
+/**
+ * Fabric GameTests for the {@link PortalLoadScenario}.
+ */
+public final class FabricPortalLoadTests implements FabricGameTest {
+  /**
+   * Runs the {@link PortalLoadScenario}.
+   *
+   * @param helper {@link GameTestHelper}.
+   */
+  @GameTest(template = EMPTY_STRUCTURE, timeoutTicks = PortalLoadScenario.TIMEOUT_TICKS)
+  public void portalLoad(GameTestHelper helper) {
+    PortalLoadScenario.run(helper);
+  }
+}
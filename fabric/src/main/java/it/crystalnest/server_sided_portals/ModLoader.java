@@ -1,7 +1,11 @@
 package it.crystalnest.server_sided_portals;
 
+import it.crystalnest.server_sided_portals.handler.CommandRegistrationHandler;
+import it.crystalnest.server_sided_portals.handler.ServerLifecycleEventsHandler;
 import it.crystalnest.server_sided_portals.handler.UseBlockHandler;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.fabric.api.event.player.UseBlockCallback;
 import org.jetbrains.annotations.ApiStatus;
 
@@ -14,5 +18,9 @@ public final class ModLoader implements ModInitializer {
   public void onInitialize() {
     CommonModLoader.init();
     UseBlockCallback.EVENT.register(UseBlockHandler::handle);
+    ServerLifecycleEvents.SERVER_STARTED.register(ServerLifecycleEventsHandler::handleStarted);
+    ServerLifecycleEvents.END_DATA_PACK_RELOAD.register(ServerLifecycleEventsHandler::handleReload);
+    ServerLifecycleEvents.SERVER_STOPPED.register(ServerLifecycleEventsHandler::handleStopped);
+    CommandRegistrationCallback.EVENT.register(CommandRegistrationHandler::handle);
   }
 }
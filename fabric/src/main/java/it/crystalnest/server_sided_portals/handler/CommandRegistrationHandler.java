@@ -0,0 +1,30 @@
+package it.crystalnest.server_sided_portals.handler;
+
+import com.mojang.brigadier.CommandDispatcher;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.minecraft.commands.CommandBuildContext;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+
+/**
+ * Handles {@link CommandRegistrationCallback} events.
+ */
+public final class CommandRegistrationHandler extends CommandHandler {
+  /**
+   * Singleton instance for this event handler.
+   */
+  private static final CommandRegistrationHandler INSTANCE = new CommandRegistrationHandler();
+
+  private CommandRegistrationHandler() {}
+
+  /**
+   * Handles {@link CommandRegistrationCallback} events.
+   *
+   * @param dispatcher {@link CommandDispatcher}.
+   * @param context {@link CommandBuildContext}.
+   * @param selection {@link Commands.CommandSelection}.
+   */
+  public static void handle(CommandDispatcher<CommandSourceStack> dispatcher, CommandBuildContext context, Commands.CommandSelection selection) {
+    INSTANCE.onRegisterCommands(dispatcher);
+  }
+}
@@ -0,0 +1,48 @@
+package it.crystalnest.server_sided_portals.handler;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.packs.resources.CloseableResourceManager;
+
+/**
+ * Handles {@link ServerLifecycleEvents} events.
+ */
+public final class ServerLifecycleEventsHandler extends ServerLifecycleHandler {
+  /**
+   * Singleton instance for this event handler.
+   */
+  private static final ServerLifecycleEventsHandler INSTANCE = new ServerLifecycleEventsHandler();
+
+  private ServerLifecycleEventsHandler() {}
+
+  /**
+   * Handles {@link ServerLifecycleEvents#SERVER_STARTED} events.
+   *
+   * @param server {@link MinecraftServer}.
+   */
+  public static void handleStarted(MinecraftServer server) {
+    INSTANCE.onServerStarted(server);
+  }
+
+  /**
+   * Handles {@link ServerLifecycleEvents#END_DATA_PACK_RELOAD} events.
+   *
+   * @param server {@link MinecraftServer}.
+   * @param resourceManager {@link CloseableResourceManager}.
+   * @param success whether the reload succeeded.
+   */
+  public static void handleReload(MinecraftServer server, CloseableResourceManager resourceManager, boolean success) {
+    if (success) {
+      INSTANCE.onDataReloaded(server);
+    }
+  }
+
+  /**
+   * Handles {@link ServerLifecycleEvents#SERVER_STOPPED} events.
+   *
+   * @param server {@link MinecraftServer}.
+   */
+  public static void handleStopped(MinecraftServer server) {
+    INSTANCE.onServerStopped(server);
+  }
+}
@@ -4,6 +4,8 @@ import it.crystalnest.cobweb.platform.model.Platform;
 import it.crystalnest.server_sided_portals.platform.services.PlatformHelper;
 import net.fabricmc.loader.api.FabricLoader;
 
+import java.nio.file.Path;
+
 /**
  * Fabric platform helper.
  */
@@ -22,4 +24,9 @@ public final class FabricPlatformHelper implements PlatformHelper {
   public boolean isDevEnv() {
     return FabricLoader.getInstance().isDevelopmentEnvironment();
   }
+
+  @Override
+  public Path getConfigDir() {
+    return FabricLoader.getInstance().getConfigDir();
+  }
 }
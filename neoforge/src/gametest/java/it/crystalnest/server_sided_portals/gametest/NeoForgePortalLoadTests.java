@@ -0,0 +1,26 @@
+package it.crystalnest.server_sided_portals.gametest;
+
+import it.crystalnest.server_sided_portals.Constants;
+import net.minecraft.gametest.framework.GameTest;
+import net.minecraft.gametest.framework.GameTestHelper;
+import net.neoforged.neoforge.gametest.GameTestHolder;
+import net.neoforged.neoforge.gametest.PrefixGameTestTemplate;
+
+/**
+ * NeoForge GameTests for the {@link PortalLoadScenario}.
+ */
+@GameTestHolder(Constants.MOD_ID)
+@PrefixGameTestTemplate(false)
+public final class NeoForgePortalLoadTests {
+  private NeoForgePortalLoadTests() {}
+
+  /**
+   * Runs the {@link PortalLoadScenario}.
+   *
+   * @param helper {@link GameTestHelper}.
+   */
+  @GameTest(template = "empty", timeoutTicks = PortalLoadScenario.TIMEOUT_TICKS)
+  public static void portalLoad(GameTestHelper helper) {
+    PortalLoadScenario.run(helper);
+  }
+}
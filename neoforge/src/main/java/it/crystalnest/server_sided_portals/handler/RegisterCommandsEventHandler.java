@@ -0,0 +1,29 @@
+package it.crystalnest.server_sided_portals.handler;
+
+import it.crystalnest.server_sided_portals.Constants;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.RegisterCommandsEvent;
+
+/**
+ * Handles {@link RegisterCommandsEvent}s.
+ */
+@EventBusSubscriber(modid = Constants.MOD_ID, bus = EventBusSubscriber.Bus.GAME)
+public final class RegisterCommandsEventHandler extends CommandHandler {
+  /**
+   * Singleton instance for this event handler.
+   */
+  private static final RegisterCommandsEventHandler INSTANCE = new RegisterCommandsEventHandler();
+
+  private RegisterCommandsEventHandler() {}
+
+  /**
+   * Handles the {@link RegisterCommandsEvent}.
+   *
+   * @param event {@link RegisterCommandsEvent}.
+   */
+  @SubscribeEvent
+  public static void handle(RegisterCommandsEvent event) {
+    INSTANCE.onRegisterCommands(event.getDispatcher());
+  }
+}
@@ -0,0 +1,57 @@
+package it.crystalnest.server_sided_portals.handler;
+
+import it.crystalnest.server_sided_portals.Constants;
+import net.minecraft.server.MinecraftServer;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.TagsUpdatedEvent;
+import net.neoforged.neoforge.event.server.ServerStartedEvent;
+import net.neoforged.neoforge.event.server.ServerStoppedEvent;
+import net.neoforged.neoforge.server.ServerLifecycleHooks;
+
+/**
+ * Handles server lifecycle events.
+ */
+@EventBusSubscriber(modid = Constants.MOD_ID, bus = EventBusSubscriber.Bus.GAME)
+public final class ServerLifecycleEventHandler extends ServerLifecycleHandler {
+  /**
+   * Singleton instance for this event handler.
+   */
+  private static final ServerLifecycleEventHandler INSTANCE = new ServerLifecycleEventHandler();
+
+  private ServerLifecycleEventHandler() {}
+
+  /**
+   * Handles the {@link ServerStartedEvent}.
+   *
+   * @param event {@link ServerStartedEvent}.
+   */
+  @SubscribeEvent
+  public static void handle(ServerStartedEvent event) {
+    INSTANCE.onServerStarted(event.getServer());
+  }
+
+  /**
+   * Handles the {@link TagsUpdatedEvent}.<br>
+   * Only server side reloads of a running server are considered, the initial load is covered by {@link ServerStartedEvent}.
+   *
+   * @param event {@link TagsUpdatedEvent}.
+   */
+  @SubscribeEvent
+  public static void handle(TagsUpdatedEvent event) {
+    MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+    if (event.getUpdateCause() == TagsUpdatedEvent.UpdateCause.SERVER_DATA_LOAD && server != null && server.isRunning()) {
+      INSTANCE.onDataReloaded(server);
+    }
+  }
+
+  /**
+   * Handles the {@link ServerStoppedEvent}.
+   *
+   * @param event {@link ServerStoppedEvent}.
+   */
+  @SubscribeEvent
+  public static void handle(ServerStoppedEvent event) {
+    INSTANCE.onServerStopped(event.getServer());
+  }
+}
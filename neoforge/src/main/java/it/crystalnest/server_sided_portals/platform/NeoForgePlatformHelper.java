@@ -4,6 +4,9 @@ import it.crystalnest.cobweb.platform.model.Platform;
 import it.crystalnest.server_sided_portals.platform.services.PlatformHelper;
 import net.neoforged.fml.ModList;
 import net.neoforged.fml.loading.FMLLoader;
+import net.neoforged.fml.loading.FMLPaths;
+
+import java.nio.file.Path;
 
 /**
  * NeoForge platform helper.
@@ -23,4 +26,9 @@ public final class NeoForgePlatformHelper implements PlatformHelper {
   public boolean isDevEnv() {
     return !FMLLoader.isProduction();
   }
+
+  @Override
+  public Path getConfigDir() {
+    return FMLPaths.CONFIGDIR.get();
+  }
 }